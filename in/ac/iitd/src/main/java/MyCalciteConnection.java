@@ -38,6 +38,7 @@ import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.sql.type.SqlTypeName;
 
 import optimizer.rel.PRel;
+import optimizer.rel.RowCursor;
 import manager.StorageManager;
 
 import java.util.Properties;
@@ -142,7 +143,8 @@ public class MyCalciteConnection {
 
         validator = SqlValidatorUtil.newValidator(operatorTable, catalogReader, typeFactory, validatorConfig);
 
-        planner = new VolcanoPlanner(RelOptCostImpl.FACTORY, Contexts.of(config));
+        // operators find the table statistics of the storage manager through the planner context
+        planner = new VolcanoPlanner(RelOptCostImpl.FACTORY, Contexts.of(config, storage_manager));
         planner.addRelTraitDef(ConventionTraitDef.INSTANCE);
 
         RelOptCluster cluster = RelOptCluster.create(planner, new RexBuilder(typeFactory));
@@ -162,6 +164,7 @@ public class MyCalciteConnection {
     }
 
     public void close() throws Exception{
+        storage_manager.close();
         connection.close();
     }
 
@@ -194,10 +197,45 @@ public class MyCalciteConnection {
         return;
     }
 
+    // bulk loads the index with leaves filled to fill_factor
+    public void create_index(String table, String column_name, int order, double fill_factor){
+        storage_manager.create_index(table, column_name, order, fill_factor);
+        return;
+    }
+
+    // indexes on several columns of a table from one scan of it, built in parallel
+    public void create_indexes(String table, int order, String... column_names){
+        storage_manager.create_indexes(table, order, column_names);
+        return;
+    }
+
     public List<Object []> evaluate(RelNode node) {
         return ((PRel) node).evaluate(storage_manager);
     }
 
+    // streams the result of the plan, the caller reads rows with next and calls close when done
+    public RowCursor open(RelNode node) {
+        return ((PRel) node).open(storage_manager);
+    }
+
+    // first limit rows of the result, the scan stops as soon as they are read
+    public List<Object []> evaluate(RelNode node, int limit) {
+        RowCursor cursor = open(node);
+        if(cursor == null){
+            return null;
+        }
+        List<Object []> result = new ArrayList<>();
+        try{
+            Object[] row;
+            while(result.size() < limit && (row = cursor.next()) != null){
+                result.add(row);
+            }
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
+
     // will be used in tests
     public List<Object []> get_records_from_block(String table, int block_id) {
         return storage_manager.get_records_from_block(table, block_id);
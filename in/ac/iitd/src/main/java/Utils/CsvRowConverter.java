@@ -133,4 +133,14 @@ public class CsvRowConverter {
     public static String[] parseLine(String s) throws IOException {
         return parser.parseLine(s);
     }
+
+    // the shared parser keeps state between calls, threads parsing lines concurrently
+    // need a parser each
+    public static CSVParser newParser() {
+        return new CSVParser();
+    }
+
+    public static String[] parseLine(CSVParser lineParser, String s) throws IOException {
+        return lineParser.parseLine(s);
+    }
 }
\ No newline at end of file
@@ -1,43 +1,82 @@
 package index.bplusTree;
 
 import storage.AbstractFile;
+import storage.File;
 
 import java.util.Queue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiPredicate;
 
 /*
     * Tree is a collection of BlockNodes
     * The first BlockNode is the metadata block - stores the order and the block_id of the root node
+    * order | root id | format | root id (4 bytes)
+    * The format is a set of flags, see BlockNode. 0 is the original layout, every block id in the nodes is
+    * 2 bytes. A tree switches on INT_IDS - 4 byte ids, the root id at byte 6 - before it writes an id that
+    * does not fit in 2 bytes, and RECORD_SLOTS once an entry comes with the slot of its record, so small
+    * trees keep the original layout. The 2 byte root id is kept up to date while it fits
 
     * The total number of keys in all leaf nodes is the total number of records in the records file.
+
+    * Concurrency - the tree latch guards its shape: the blocks list, the root and every internal node.
+    * A writer goes down holding it shared and latches the leaf it reaches. If that leaf is safe - an
+    * insert does not split it and a delete does not underflow it - the leaf is the only node that
+    * changes, and no ancestor stays latched. Otherwise the writer starts over holding the tree latch
+    * exclusively, as a split or a merge can go all the way up to the root.
+    * Readers take no latch at first, they read with optimistic stamps of the tree and of the leaves
+    * and validate them at the end, and only retry under shared latches if a writer got in
+
+    * B-link mode - every node also knows its high key and the node to its right. A split first
+    * publishes the new right sibling, then cuts the node down and links it to the sibling under the
+    * node latch, so a key is always reachable by going down and moving right past nodes whose high key
+    * is below it. Point lookups then take no latch at all: they read each node under an optimistic
+    * stamp and move right past splits they raced with. Writers still latch as above and latch every
+    * node they change. Deletes do not rebalance in this mode, leaves may underflow or stay empty,
+    * as a merge could move a key to the left of a reader
 */
 
 public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
 
     Class<T> typeClass;
 
+    private final StampedLock latch = new StampedLock();
+
+    private final boolean blink;
+
+    // what an optimistic read returns once it saw a writer, it is then done again under the latches
+    private static final int RETRY = -2;
+
+    // slot of a delete that takes the entry whatever its record slot
+    private static final int ANY_SLOT = -1;
+
     // Constructor - creates the metadata block and the root node
     public BPlusTreeIndexFile(int order, Class<T> typeClass) {
+        this(order, typeClass, false);
+    }
+
+    // blink turns on the B-link mode described above
+    public BPlusTreeIndexFile(int order, Class<T> typeClass, boolean blink) {
         
         super();
         this.typeClass = typeClass;
+        this.blink = blink;
         BlockNode node = new BlockNode(); // the metadata block
         LeafNode<T> root = new LeafNode<>(typeClass);
 
         // 1st 2 bytes in metadata block is order
-        byte[] orderBytes = new byte[2];
-        orderBytes[0] = (byte) (order >> 8);
-        orderBytes[1] = (byte) order;
-        node.write_data(0, orderBytes);
+        node.write_short(0, order);
 
         // next 2 bytes are for root_node_id, here 1
-        byte[] rootNodeIdBytes = new byte[2];
-        rootNodeIdBytes[0] = 0;
-        rootNodeIdBytes[1] = 1;
-        node.write_data(2, rootNodeIdBytes);
+        node.write_short(2, 1);
+
+        // nodes start in the original format
+        node.write_short(4, 0);
 
         // push these nodes to the blocks list
         blocks.add(node);
@@ -51,15 +90,20 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
     }
 
     private int getRootId() {
-        BlockNode node = blocks.get(0);
-        byte[] rootBlockIdBytes = node.get_data(2, 2);
-        return (rootBlockIdBytes[0] << 8) | (rootBlockIdBytes[1] & 0xFF);
+        BlockNode meta = blocks.get(0);
+        return (meta.get_short(4) & BlockNode.INT_IDS) != 0 ? meta.get_int(6) : meta.get_short(2);
+    }
+
+    private int format() {
+        return blocks.get(0).get_short(4);
+    }
+
+    public boolean is_blink() {
+        return blink;
     }
 
     public int getOrder() {
-        BlockNode node = blocks.get(0);
-        byte[] orderBytes = node.get_data(0, 2);
-        return (orderBytes[0] << 8) | (orderBytes[1] & 0xFF);
+        return blocks.get(0).get_short(0);
     }
 
     private boolean isLeaf(BlockNode node){
@@ -79,95 +123,208 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
         return key1.toString().compareTo(key2.toString());
     }
 
+    // the search key as the nodes compare it, the primitive trees hand out their own probes
+    KeyProbe probe(T key){
+        return KeyProbe.of(key, typeClass);
+    }
+
+    /*
+        * key that goes up when a leaf is split between the keys left and right, or ends a leaf in a bulk load
+        * any key in (left, right] keeps every lookup right: the ones <= it go left, the others go right
+        * the full right key by default, the string tree hands out a shorter one
+    */
+    T separator(T left, T right){
+        return right;
+    }
+
+    // goes down to the child of the first key >= key, binary searching each node in place
     private int findLeafNode(T key){
-        int rootIndex = this.getRootId();
-        InternalNode<T> rootNode = (InternalNode<T>) this.blocks.get(rootIndex);
-        T[] keys = rootNode.getKeys();
-        int index = 0;
-        while(index < rootNode.getNumKeys() && this.compare(keys[index], key) < 0){
-            index = index + 1;
+        return this.findLeafNode(this.probe(key), 0);
+    }
+
+    // an optimistic reader passes its tree stamp, RETRY comes back as soon as a writer changed the shape
+    // checking at every level keeps a torn read from walking around the tree for ever
+    private int findLeafNode(KeyProbe probe, long stamp){
+        int id = this.getRootId();
+        while(!this.isLeaf(id)){
+            InternalNode<T> node = (InternalNode<T>) this.blocks.get(id);
+            id = node.getChild(node.lowerBound(probe));
+            if(stamp != 0 && !this.latch.validate(stamp)){
+                return RETRY;
+            }
         }
-        int[] children = rootNode.getChildren();
-        if(this.isLeaf(this.blocks.get(children[index]))){
-            return children[index];
+        return id;
+    }
+
+    /*
+        * Runs change on the leaf that the key leads to, holding the tree latch shared and the leaf latch
+        * exclusively, so writers on other leaves go on at the same time
+        * change returns false when the leaf is not safe and leaves it as it was, the caller then
+        * redoes the operation under the exclusive tree latch
+    */
+    private boolean changeLeaf(KeyProbe probe, BiPredicate<Integer, LeafNode<T>> change){
+        long stamp = this.latch.readLock();
+        try{
+            int leafIndex = this.findLeafNode(probe, 0);
+            LeafNode<T> leaf = (LeafNode<T>) this.blocks.get(leafIndex);
+            long leafStamp = leaf.latch.writeLock();
+            try{
+                return change.test(leafIndex, leaf);
+            } finally {
+                leaf.latch.unlockWrite(leafStamp);
+            }
+        } finally {
+            this.latch.unlockRead(stamp);
         }
-        else{
-            return findLeafNode((InternalNode<T>) this.blocks.get(children[index]), key);
+    }
+
+    // runs change under the write latch of node, for the nodes a writer changes while B-link readers go on
+    private void writeNode(BlockNode node, Runnable change){
+        long stamp = node.latch.writeLock();
+        try{
+            change.run();
+        } finally {
+            node.latch.unlockWrite(stamp);
         }
     }
 
-    private int findLeafNode(InternalNode<T> node, T key){
-        T[] keys = node.getKeys();
+    // a leaf is read either under an optimistic stamp, which is validated after the read, or under its read latch
+    private long latchLeaf(LeafNode<T> leaf, boolean optimistic){
+        return optimistic ? leaf.latch.tryOptimisticRead() : leaf.latch.readLock();
+    }
+
+    // after a split the node keeps the first count entries of the merged keys, the new entry can be among them
+    // string keys get the longest prefix of what the node now holds
+    private void keepFirst(LeafNode<T> node, T[] newKeys, long[] newrecords, int count){
+        node.removeAllKeysFrom(0);
+        for(int i = 0; i < count; i++){
+            node.appendRecord(newKeys[i], newrecords[i]);
+        }
+        node.compress();
+    }
+
+    private void keepFirst(InternalNode<T> node, T[] newKeys, int[] newchildren, int count){
+        node.removeAllKeysFrom(0);
+        node.setFirstChild(newchildren[0]);
+        for(int i = 0; i < count; i++){
+            node.append(newKeys[i], newchildren[i + 1]);
+        }
+        node.compress();
+    }
+
+    private int childPosition(int[] children, int child_id){
         int index = 0;
-        while(index < node.getNumKeys() && this.compare(keys[index], key) < 0){
+        while(index < children.length - 1 && children[index] != child_id){
             index = index + 1;
         }
-        int[] children = node.getChildren();
-        if(this.isLeaf(this.blocks.get(children[index]))){
-            return children[index];
+        return index;
+    }
+
+    private void updateRootIndex(int index){
+        BlockNode meta = this.blocks.get(0);
+        this.writeNode(meta, () -> {
+            if((this.format() & BlockNode.INT_IDS) != 0){
+                meta.write_int(6, index);
+            }
+            // 0 is never a root, it tells readers of the 2 byte id that it no longer fits
+            meta.write_short(2, index <= BlockNode.MAX_SHORT_ID ? index : 0);
+        });
+    }
+
+    /*
+        * Switches the tree to the format the next entries need: 4 byte ids if block_id, about to go into a
+        * leaf, or a block id below numBlocks, the size the blocks list can reach, does not fit in 2 bytes,
+        * and record slots if the entries come with one
+        * Every node is written again under its latch, the tree latch is held exclusively
+    */
+    private void fitFormat(int block_id, boolean record_slots, int numBlocks){
+        int format = this.format();
+        if(block_id > BlockNode.MAX_SHORT_ID || numBlocks - 1 > BlockNode.MAX_SHORT_ID){
+            format |= BlockNode.INT_IDS;
         }
-        else{
-            return findLeafNode((InternalNode<T>) this.blocks.get(children[index]), key);
+        if(record_slots){
+            format |= BlockNode.RECORD_SLOTS;
         }
-          
+        if(format == this.format()){
+            return;
+        }
+        int newFormat = format;
+        for(int id = 1; id < this.blocks.size(); id++){
+            BlockNode node = this.blocks.get(id);
+            if(this.isLeaf(node)){
+                this.writeNode(node, () -> ((LeafNode<T>) node).reformat(newFormat));
+            } else {
+                this.writeNode(node, () -> ((InternalNode<T>) node).reformat(newFormat));
+            }
+        }
+        BlockNode meta = this.blocks.get(0);
+        int root = this.getRootId();
+        this.writeNode(meta, () -> {
+            if((newFormat & BlockNode.INT_IDS) != 0){
+                meta.write_int(6, root);
+            }
+            meta.write_short(4, newFormat);
+        });
     }
 
-
-    private void updateRootIndex(int index){
-        byte[] bytes = new byte[2];
-        bytes[0] = (byte) (index >> 8);
-        bytes[1] = (byte) (index);
-        this.blocks.get(0).write_data(2, bytes);
+    // number of levels, 1 for a root leaf
+    private int height(){
+        int levels = 1;
+        for(int id = this.getRootId(); !this.isLeaf(id); id = ((InternalNode<T>) this.blocks.get(id)).getChild(0)){
+            levels++;
+        }
+        return levels;
     }
 
     /*
     split the root node into two leaf nodes and create a new root node pointing to these two new leaf nodes
     */
-    private void splitRootAsLeaf(T key, int block_id){
+    private void splitRootAsLeaf(T key, long record_id){
         LeafNode<T> node = (LeafNode<T>) this.blocks.get(this.getRootId());
         int numKeys = node.getNumKeys();
         T[] keys = node.getKeys();
-        int[] blocks = node.getBlockIds();
+        long[] records = node.getRecordIds();
         T[] newKeys = (T[]) new Object[keys.length + 1];
-        int[] newblocks = new int[keys.length + 1];
+        long[] newrecords = new long[keys.length + 1];
         // find the correct place of the new value
-        int index = 0;
-        
-        while(index < keys.length && this.compare(keys[index], key) < 0){
-            index = index + 1;
-        }
+        int index = node.lowerBound(key);
         System.arraycopy(keys, 0, newKeys, 0, index);
-        System.arraycopy(blocks, 0, newblocks, 0, index);
+        System.arraycopy(records, 0, newrecords, 0, index);
         System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
-        System.arraycopy(blocks, index, newblocks, index + 1, keys.length - index);
+        System.arraycopy(records, index, newrecords, index + 1, keys.length - index);
         newKeys[index] = key;
-        newblocks[index] = block_id;
+        newrecords[index] = record_id;
 
         int mid = ((this.getOrder() + 1) / 2) - 1;
+        T separator = this.separator(newKeys[mid - 1], newKeys[mid]);
         // create a new leaf node
-        LeafNode<T> sibling = new LeafNode<>(typeClass);
+        LeafNode<T> sibling = new LeafNode<>(typeClass, this.format());
         for(int i=mid; i<newKeys.length; i++){
-            sibling.insert(newKeys[i], newblocks[i]);
+            sibling.insertRecord(newKeys[i], newrecords[i]);
         }
+        sibling.compress();
         // left part
         // LeafNode<T> siblingl = new LeafNode<>(typeClass);
         // for(int i=0; i<mid; i++){
         //     siblingl.insert(newKeys[i], newblocks[i]);
         // }
 
-        node.removeAllKeysFrom(mid);
-
-        T[] keys2 = node.getKeys();
-        
         sibling.setNext(node.next());
         sibling.setPrev(this.getRootId());
+        sibling.setHighKey(node.getHighKey());
         this.blocks.add(sibling);
         int siblingIndex = this.blocks.size() - 1;
-        if( node.next() != 0){
-            ((LeafNode<T>) this.blocks.get((node.next()))).setPrev(siblingIndex);
+        // the sibling is reachable from the node before the keys leave it
+        this.writeNode(node, () -> {
+            this.keepFirst(node, newKeys, newrecords, mid);
+            node.setNext(siblingIndex);
+            node.setHighKey(separator);
+        });
+        if(sibling.next() != 0){
+            LeafNode<T> next = (LeafNode<T>) this.blocks.get(sibling.next());
+            this.writeNode(next, () -> next.setPrev(siblingIndex));
         }
-        node.setNext(siblingIndex);
-        InternalNode<T> newRoot = new InternalNode<>(newKeys[mid], this.getRootId(), siblingIndex, typeClass);
+        InternalNode<T> newRoot = new InternalNode<>(separator, this.getRootId(), siblingIndex, typeClass, this.format());
         this.blocks.add(newRoot);
         int newRootIndex = this.blocks.size() - 1;
         this.updateRootIndex(newRootIndex);
@@ -175,7 +332,30 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
         sibling.setParentIndex(newRootIndex);
     }
 
-    private void splitNode(int nodeIndex, T key, int block_id){
+    /*
+        * second half of an internal split, the keys after mid are already in sibling
+        * the sibling takes over the high key and the right link of node, and is in the blocks list
+        * before node gives up its keys and links to it. Returns the block id of the sibling
+    */
+    private int publishSibling(InternalNode<T> node, InternalNode<T> sibling, T[] newKeys, int[] newchildren, int mid){
+        sibling.setHighKey(node.getHighKey());
+        sibling.setRightLink(node.getRightLink());
+        this.blocks.add(sibling);
+        int siblingIndex = this.blocks.size() - 1;
+        this.writeNode(node, () -> {
+            this.keepFirst(node, newKeys, newchildren, mid);
+            node.setHighKey(newKeys[mid]);
+            node.setRightLink(siblingIndex);
+        });
+        return siblingIndex;
+    }
+
+    /*
+        * splits the full node nodeIndex while adding key and block_id to it
+        * for a leaf the entry also keeps slot, the slot of its record
+        * for an internal node block_id is the new child, it goes right after its split sibling left_child_id
+    */
+    private void splitNode(int nodeIndex, T key, int block_id, int slot, int left_child_id){
 
         if(this.getRootId() == nodeIndex){
             InternalNode<T> node = (InternalNode<T>) this.blocks.get(nodeIndex);
@@ -184,10 +364,7 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
             T[] newKeys = (T[]) new Object[keys.length + 1];
             int[] newchildren = new int[children.length + 1];
             // find the correct place of the new value
-            int index = 0;
-            while(index < keys.length && this.compare(keys[index], key) < 0){
-                index = index + 1;
-            }
+            int index = this.childPosition(children, left_child_id);
             System.arraycopy(keys, 0, newKeys, 0, index);
             System.arraycopy(children, 0, newchildren, 0, index+1);
             System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
@@ -196,10 +373,11 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
             newchildren[index+1] = block_id;
 
             int mid = ((this.getOrder() + 1) / 2) - 1;
-            InternalNode<T> newSibling = new InternalNode<>(newKeys[mid+1], newchildren[mid+1], newchildren[mid+2], typeClass);
+            InternalNode<T> newSibling = new InternalNode<>(newKeys[mid+1], newchildren[mid+1], newchildren[mid+2], typeClass, this.format());
             for(int i= mid+2; i<newKeys.length; i++){
                 newSibling.insert(newKeys[i], newchildren[i+1]);
             }
+            newSibling.compress();
 
             for(int i= mid; i<newKeys.length; i++){
                 if(isLeaf(this.blocks.get(newchildren[i+1]))){
@@ -208,11 +386,8 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
                     ((InternalNode<T>) this.blocks.get(newchildren[i+1])).setParentIndex(this.blocks.size());
                 }
             }
-            node.removeAllKeysFrom(mid);
-            
-            this.blocks.add(newSibling);
-            int siblingIndex = this.blocks.size() - 1;
-            InternalNode<T> newRoot = new InternalNode<>(newKeys[mid], nodeIndex, siblingIndex, typeClass);
+            int siblingIndex = this.publishSibling(node, newSibling, newKeys, newchildren, mid);
+            InternalNode<T> newRoot = new InternalNode<>(newKeys[mid], nodeIndex, siblingIndex, typeClass, this.format());
             this.blocks.add(newRoot);
             updateRootIndex(this.blocks.size() - 1);
             node.setParentIndex(this.blocks.size() - 1);
@@ -223,46 +398,51 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
             LeafNode<T> node = (LeafNode<T>) this.blocks.get(nodeIndex);
             int numKeys = node.getNumKeys();
             T[] keys = node.getKeys();
-            int[] blocks = node.getBlockIds();
+            long[] records = node.getRecordIds();
             T[] newKeys = (T[]) new Object[keys.length + 1];
-            int[] newblocks = new int[keys.length + 1];
+            long[] newrecords = new long[keys.length + 1];
             // find the correct place of the new value
-            int index = 0;
-            while(index < keys.length && this.compare(keys[index], key) < 0){
-                index = index + 1;
-            }
+            int index = node.lowerBound(key);
             System.arraycopy(keys, 0, newKeys, 0, index);
-            System.arraycopy(blocks, 0, newblocks, 0, index);
+            System.arraycopy(records, 0, newrecords, 0, index);
             System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
-            System.arraycopy(blocks, index, newblocks, index + 1, keys.length - index);
+            System.arraycopy(records, index, newrecords, index + 1, keys.length - index);
             
             
             newKeys[index] = key;
-            newblocks[index] = block_id;
+            newrecords[index] = File.record_id(block_id, slot);
 
             int mid = ((this.getOrder() + 1) / 2) - 1;
+            T separator = this.separator(newKeys[mid - 1], newKeys[mid]);
             // create a new leaf node
-            LeafNode<T> sibling = new LeafNode<>(typeClass);
+            LeafNode<T> sibling = new LeafNode<>(typeClass, this.format());
             for(int i=mid; i<newKeys.length; i++){
-                sibling.insert(newKeys[i], newblocks[i]);
+                sibling.insertRecord(newKeys[i], newrecords[i]);
             }
+            sibling.compress();
 
-            node.removeAllKeysFrom(mid);
             sibling.setNext(node.next());
             sibling.setPrev(nodeIndex);
+            sibling.setHighKey(node.getHighKey());
             this.blocks.add(sibling);
             int siblingIndex = this.blocks.size() - 1;
-            if( node.next() != 0){
-                ((LeafNode<T>) this.blocks.get((node.next()))).setPrev(siblingIndex);
+            this.writeNode(node, () -> {
+                this.keepFirst(node, newKeys, newrecords, mid);
+                node.setNext(siblingIndex);
+                node.setHighKey(separator);
+            });
+            if(sibling.next() != 0){
+                LeafNode<T> next = (LeafNode<T>) this.blocks.get(sibling.next());
+                this.writeNode(next, () -> next.setPrev(siblingIndex));
             }
-            node.setNext(siblingIndex);
             sibling.setParentIndex(node.getParentIndex());
             if(!this.isFull(node.getParentIndex())){
-                ((InternalNode<T>) this.blocks.get(node.getParentIndex())).insert(newKeys[mid], siblingIndex);
+                InternalNode<T> parent = (InternalNode<T>) this.blocks.get(node.getParentIndex());
+                this.writeNode(parent, () -> parent.insertAfterChild(nodeIndex, separator, siblingIndex));
                 return;
             }
             else{
-                splitNode(sibling.getParentIndex(), newKeys[mid], siblingIndex);
+                splitNode(sibling.getParentIndex(), separator, siblingIndex, File.NO_SLOT, nodeIndex);
             }
         }
         else{
@@ -272,10 +452,7 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
             T[] newKeys = (T[]) new Object[keys.length + 1];
             int[] newchildren = new int[children.length + 1];
             // find the correct place of the new value
-            int index = 0;
-            while(index < keys.length && this.compare(keys[index], key) < 0){
-                index = index + 1;
-            }
+            int index = this.childPosition(children, left_child_id);
             System.arraycopy(keys, 0, newKeys, 0, index);
             System.arraycopy(children, 0, newchildren, 0, index+1);
             System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
@@ -284,13 +461,13 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
             newchildren[index+1] = block_id;
 
             int mid = ((this.getOrder() + 1) / 2) - 1;
-            InternalNode<T> newSibling = new InternalNode<>(newKeys[mid+1], newchildren[mid+1], newchildren[mid+2], typeClass);
-            node.removeAllKeysFrom(mid);
+            InternalNode<T> newSibling = new InternalNode<>(newKeys[mid+1], newchildren[mid+1], newchildren[mid+2], typeClass, this.format());
             newSibling.setParentIndex(node.getParentIndex());
             for(int i= mid+2; i<newKeys.length; i++){
                 newSibling.insert(newKeys[i], newchildren[i+1]);
                 //update the parent pointer of these children
             }
+            newSibling.compress();
             for(int i= mid; i<newKeys.length; i++){
                 if(isLeaf(this.blocks.get(newchildren[i+1]))){
                     ((LeafNode<T>) this.blocks.get(newchildren[i+1])).setParentIndex(this.blocks.size());
@@ -299,15 +476,14 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
                 }
             }
             
-            this.blocks.add(newSibling);
-            int siblingIndex = this.blocks.size() - 1;
+            int siblingIndex = this.publishSibling(node, newSibling, newKeys, newchildren, mid);
             if(!this.isFull(node.getParentIndex())){
-                ((InternalNode<T>) this.blocks.get(node.getParentIndex())).insert(newKeys[mid], siblingIndex);
-                    
+                InternalNode<T> parent = (InternalNode<T>) this.blocks.get(node.getParentIndex());
+                this.writeNode(parent, () -> parent.insertAfterChild(nodeIndex, newKeys[mid], siblingIndex));
                 return;
             }
             else{
-                splitNode(newSibling.getParentIndex(), newKeys[mid], siblingIndex);
+                splitNode(newSibling.getParentIndex(), newKeys[mid], siblingIndex, File.NO_SLOT, nodeIndex);
                
             }
         }
@@ -318,64 +494,776 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
     public void insert(T key, int block_id) {
 
         /* Write your code here */
+        this.insert(key, block_id, File.NO_SLOT);
+    }
+
+    // the entry also keeps slot, the slot of the record in block block_id, see File.record_id
+    public void insert(T key, int block_id, int slot) {
+        // a leaf with room is the only node that changes, unless the entry needs another format
+        boolean inserted = this.changeLeaf(this.probe(key), (leafIndex, leaf) -> {
+            if(this.isFull(leafIndex) || (block_id > BlockNode.MAX_SHORT_ID && !leaf.hasFormat(BlockNode.INT_IDS))
+                    || (slot != File.NO_SLOT && !leaf.hasFormat(BlockNode.RECORD_SLOTS))){
+                return false;
+            }
+            leaf.insertRecord(key, File.record_id(block_id, slot));
+            return true;
+        });
+        if(inserted){
+            return;
+        }
+        long stamp = this.latch.writeLock();
+        try{
+            this.insertExclusive(key, block_id, slot);
+        } finally {
+            this.latch.unlockWrite(stamp);
+        }
+    }
+
+    // the tree latch is held exclusively
+    private void insertExclusive(T key, int block_id, int slot) {
+        // a split adds a node on each level and a new root at most
+        this.fitFormat(block_id, slot != File.NO_SLOT, this.blocks.size() + this.height() + 1);
+        long record_id = File.record_id(block_id, slot);
+
         /* get block which can contain this key*/
         int rootIndex = this.getRootId();
 
         if(this.isLeaf(this.blocks.get(rootIndex))){
             if(!this.isFull(rootIndex)){
-                ((LeafNode<T>) this.blocks.get(rootIndex)).insert(key, block_id); 
+                LeafNode<T> root = (LeafNode<T>) this.blocks.get(rootIndex);
+                this.writeNode(root, () -> root.insertRecord(key, record_id));
             }else{
-                splitRootAsLeaf(key, block_id);
+                splitRootAsLeaf(key, record_id);
             }
             return;
         }
         
         int leafNodeIndex = this.findLeafNode(key);
         if(this.isFull(leafNodeIndex)){
-            splitNode(leafNodeIndex, key, block_id);
+            splitNode(leafNodeIndex, key, block_id, slot, -1);
         }
         else{
-            ((LeafNode<T>) this.blocks.get(leafNodeIndex)).insert(key, block_id);
+            LeafNode<T> leaf = (LeafNode<T>) this.blocks.get(leafNodeIndex);
+            this.writeNode(leaf, () -> leaf.insertRecord(key, record_id));
         }
         return;
     }
 
+    /*
+        * Builds the tree bottom up from unsorted (key, block_id) pairs, the tree has to be empty
+        * Leaves are packed with fill_factor * (order - 1) keys and linked left to right,
+        * then each internal level is built over the one below it in a single pass
+    */
+    public void bulk_load(List<T> keys, List<Integer> block_ids, double fill_factor) {
+        this.bulk_load(keys, block_ids, null, fill_factor);
+    }
+
+    // slots holds the slot of each record in its block, null if the entries go without one
+    public void bulk_load(List<T> keys, List<Integer> block_ids, List<Integer> slots, double fill_factor) {
+
+        long stamp = this.latch.writeLock();
+        try{
+            // the leaves and at most as many internal nodes
+            int numLeaves = (keys.size() + this.leafCapacity(fill_factor) - 1) / this.leafCapacity(fill_factor);
+            this.fitFormat(block_ids.isEmpty() ? 0 : Collections.max(block_ids), slots != null, 1 + 2 * numLeaves);
+            // the first leaf is filled in place, B-link readers of the empty tree wait for the whole load
+            this.writeNode(this.blocks.get(1), () -> this.bulkLoadExclusive(keys, block_ids, slots, fill_factor));
+        } finally {
+            this.latch.unlockWrite(stamp);
+        }
+    }
+
+    private void bulkLoadExclusive(List<T> keys, List<Integer> block_ids, List<Integer> slots, double fill_factor) {
+
+        assert(getOrder() >= 3);
+        assert(keys.size() == block_ids.size());
+        assert(slots == null || slots.size() == block_ids.size());
+        assert(this.blocks.size() == 2 && this.blocks.get(1).getNumKeys() == 0);
+
+        int n = keys.size();
+        if(n == 0){
+            return;
+        }
+
+        int[] order = this.sortOrder(keys);
+
+        int leafCapacity = this.leafCapacity(fill_factor);
+        int fanout = Math.max(3, Math.min(getOrder(), (int) Math.ceil(fill_factor * getOrder())));
+
+        // leaf level, the existing empty root leaf becomes the leftmost leaf
+        int numLeaves = (n + leafCapacity - 1) / leafCapacity;
+        List<Integer> level = new ArrayList<>();
+        List<T> lowKeys = new ArrayList<>();
+        int next = 0;
+        for(int l = 0; l < numLeaves; l++){
+            // spread keys evenly so that the last leaf is not left underfull
+            int size = n / numLeaves + (l < n % numLeaves ? 1 : 0);
+            LeafNode<T> leaf;
+            int leafIndex;
+            // the separator in front of the leaf, its first key unless separator() shortens it
+            T lowKey = keys.get(order[next]);
+            if(l == 0){
+                leafIndex = 1;
+                leaf = (LeafNode<T>) this.blocks.get(1);
+            } else {
+                leaf = new LeafNode<>(typeClass, this.format());
+                this.blocks.add(leaf);
+                leafIndex = this.blocks.size() - 1;
+                int prevIndex = level.get(level.size() - 1);
+                leaf.setPrev(prevIndex);
+                LeafNode<T> prev = (LeafNode<T>) this.blocks.get(prevIndex);
+                prev.setNext(leafIndex);
+                lowKey = this.separator(keys.get(order[next - 1]), lowKey);
+                prev.setHighKey(lowKey);
+            }
+            lowKeys.add(lowKey);
+            for(int i = 0; i < size; i++, next++){
+                int slot = slots == null ? File.NO_SLOT : slots.get(order[next]);
+                leaf.appendRecord(keys.get(order[next]), File.record_id(block_ids.get(order[next]), slot));
+            }
+            leaf.compress();
+            level.add(leafIndex);
+        }
+
+        // internal levels, the separator before each child is the low key of its leftmost leaf
+        while(level.size() > 1){
+            int m = level.size();
+            int numNodes = (m + fanout - 1) / fanout;
+            List<Integer> parents = new ArrayList<>();
+            List<T> parentLowKeys = new ArrayList<>();
+            int child = 0;
+            InternalNode<T> prev = null;
+            for(int p = 0; p < numNodes; p++){
+                int size = m / numNodes + (p < m % numNodes ? 1 : 0);
+                InternalNode<T> node = new InternalNode<>(lowKeys.get(child + 1), level.get(child), level.get(child + 1), typeClass, this.format());
+                for(int i = child + 2; i < child + size; i++){
+                    node.append(lowKeys.get(i), level.get(i));
+                }
+                node.compress();
+                this.blocks.add(node);
+                int nodeIndex = this.blocks.size() - 1;
+                for(int i = child; i < child + size; i++){
+                    setParentIndex(level.get(i), nodeIndex);
+                }
+                if(prev != null){
+                    prev.setHighKey(lowKeys.get(child));
+                    prev.setRightLink(nodeIndex);
+                }
+                prev = node;
+                parents.add(nodeIndex);
+                parentLowKeys.add(lowKeys.get(child));
+                child += size;
+            }
+            level = parents;
+            lowKeys = parentLowKeys;
+        }
+        updateRootIndex(level.get(0));
+    }
+
+    // keys in a leaf of a bulk load
+    private int leafCapacity(double fill_factor){
+        return Math.max(1, Math.min(getOrder() - 1, (int) Math.ceil(fill_factor * (getOrder() - 1))));
+    }
+
+    // positions of the keys in increasing key order, a stable sort - equal keys keep their scan order
+    int[] sortOrder(List<T> keys) {
+        Integer[] order = new Integer[keys.size()];
+        for(int i = 0; i < order.length; i++){
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> this.compare(keys.get(a), keys.get(b)));
+        int[] positions = new int[order.length];
+        for(int i = 0; i < order.length; i++){
+            positions[i] = order[i];
+        }
+        return positions;
+    }
+
+    private void setParentIndex(int id, int parentIndex) {
+        if(isLeaf(id)){
+            ((LeafNode<T>) this.blocks.get(id)).setParentIndex(parentIndex);
+        } else {
+            ((InternalNode<T>) this.blocks.get(id)).setParentIndex(parentIndex);
+        }
+    }
+
     // will be evaluated
     // returns the block_id of the leftmost leaf node containing the key
     public int search(T key) {
 
         /* Write your code here */
-        int rootNodeIndex = this.getRootId();
-        if (this.isLeaf(rootNodeIndex)){
-            T[] keys = ((LeafNode<T>) this.blocks.get(rootNodeIndex)).getKeys();
-            int[] children = ((LeafNode<T>) this.blocks.get(rootNodeIndex)).getBlockIds();
-            for(int i=0; i<keys.length; i++){
-                if(this.compare(key, keys[i]) == 0){
-                    return rootNodeIndex;
+        return this.search(this.probe(key));
+    }
+
+    int search(KeyProbe probe) {
+        if(this.blink){
+            return this.searchBlink(probe);
+        }
+        long stamp = this.latch.tryOptimisticRead();
+        if(stamp != 0){
+            try{
+                int id = this.searchLeaves(probe, stamp);
+                if(id != RETRY && this.latch.validate(stamp)){
+                    return id;
                 }
+            } catch(RuntimeException e){
+                // a writer changed the nodes in the middle of the read, it is done again below
             }
-            return -1;
         }
+        stamp = this.latch.readLock();
+        try{
+            return this.searchLeaves(probe, 0);
+        } finally {
+            this.latch.unlockRead(stamp);
+        }
+    }
 
-        int leafNodeIndex = this.findLeafNode(key);
-        T[] keys = ((LeafNode<T>) this.blocks.get(leafNodeIndex)).getKeys();
-        int[] children = ((LeafNode<T>) this.blocks.get(leafNodeIndex)).getBlockIds();
-        for(int i=0; i<keys.length; i++){
-            if(this.compare(key, keys[i]) == 0){
-               return leafNodeIndex;
+    // B-link lookup, takes no latch and starts over from the root when a node changed under the read
+    private int searchBlink(KeyProbe probe){
+        while(true){
+            try{
+                int id = this.searchMovingRight(probe);
+                if(id != RETRY){
+                    return id;
+                }
+            } catch(RuntimeException e){
+                // a torn read of a node that was being changed
+            }
+            Thread.yield();
+        }
+    }
+
+    // true when the key is above the high key of a node, it then went to the right in a split
+    private boolean pastHighKey(KeyProbe probe, T highKey){
+        return highKey != null && probe.compareKey(highKey) < 0;
+    }
+
+    // each node is read under an optimistic stamp of its own latch and validated before its link is followed
+    private int searchMovingRight(KeyProbe probe){
+        BlockNode meta = this.blocks.get(0);
+        long stamp = meta.latch.tryOptimisticRead();
+        int id = this.getRootId();
+        if(!meta.latch.validate(stamp)){
+            return RETRY;
+        }
+        while(!this.isLeaf(id)){
+            InternalNode<T> node = (InternalNode<T>) this.blocks.get(id);
+            stamp = node.latch.tryOptimisticRead();
+            int next;
+            if(node.getRightLink() != 0 && this.pastHighKey(probe, node.getHighKey())){
+                next = node.getRightLink();
+            } else {
+                next = node.getChild(node.lowerBound(probe));
+            }
+            if(!node.latch.validate(stamp)){
+                return RETRY;
+            }
+            id = next;
+        }
+        // moves right past split leaves, and past leaves that end before the first copy of key
+        while(true){
+            LeafNode<T> leaf = (LeafNode<T>) this.blocks.get(id);
+            stamp = leaf.latch.tryOptimisticRead();
+            int next = leaf.next();
+            int found = 0;
+            if(next == 0 || !this.pastHighKey(probe, leaf.getHighKey())){
+                int i = leaf.lowerBound(probe);
+                if(i < leaf.getNumKeys()){
+                    found = leaf.compareAt(i, probe) == 0 ? id : -1;
+                } else if(next == 0){
+                    found = -1;
+                }
+            }
+            if(!leaf.latch.validate(stamp)){
+                return RETRY;
+            }
+            if(found != 0){
+                return found;
+            }
+            id = next;
+        }
+    }
+
+    // stamp is the optimistic tree stamp of the caller, 0 if it holds the tree latch
+    private int searchLeaves(KeyProbe probe, long stamp){
+        int leafNodeIndex = this.findLeafNode(probe, stamp);
+        if(leafNodeIndex == RETRY){
+            return RETRY;
+        }
+        boolean optimistic = stamp != 0;
+        LeafNode<T> leaf = (LeafNode<T>) this.blocks.get(leafNodeIndex);
+        long leafStamp = this.latchLeaf(leaf, optimistic);
+        try{
+            int i = leaf.lowerBound(probe);
+            int id;
+            if(i == leaf.getNumKeys() && leaf.next() != 0){
+                // the separator above only bounds the leaf from above, the first copy of key
+                // can be at the start of the next leaf
+                id = this.searchFirst(leaf.next(), probe, optimistic);
+            } else {
+                id = i < leaf.getNumKeys() && leaf.compareAt(i, probe) == 0 ? leafNodeIndex : -1;
+            }
+            return optimistic && !leaf.latch.validate(leafStamp) ? RETRY : id;
+        } finally {
+            if(!optimistic){
+                leaf.latch.unlockRead(leafStamp);
+            }
+        }
+    }
+
+    // leafNodeIndex if its leaf starts with the key, -1 if not
+    private int searchFirst(int leafNodeIndex, KeyProbe probe, boolean optimistic){
+        LeafNode<T> leaf = (LeafNode<T>) this.blocks.get(leafNodeIndex);
+        long leafStamp = this.latchLeaf(leaf, optimistic);
+        try{
+            int id = leaf.getNumKeys() > 0 && leaf.compareAt(0, probe) == 0 ? leafNodeIndex : -1;
+            return optimistic && !leaf.latch.validate(leafStamp) ? RETRY : id;
+        } finally {
+            if(!optimistic){
+                leaf.latch.unlockRead(leafStamp);
+            }
+        }
+    }
+
+    private int firstLeaf(){
+        int id = this.getRootId();
+        while(!this.isLeaf(id)){
+            id = ((InternalNode<T>) this.blocks.get(id)).getChild(0);
+        }
+        return id;
+    }
+
+    // goes down to the child after the last key <= key, the last leaf that can hold key
+    private int findLastLeafNode(KeyProbe probe){
+        int id = this.getRootId();
+        while(!this.isLeaf(id)){
+            InternalNode<T> node = (InternalNode<T>) this.blocks.get(id);
+            id = node.getChild(probe == null ? node.getNumKeys() : node.upperBound(probe));
+        }
+        return id;
+    }
+
+    // cursor over the entries with low <= key <= high in increasing key order, see IndexCursor
+    public IndexCursor<T> scan(T low, boolean low_inclusive, T high, boolean high_inclusive) {
+        return scan(low, low_inclusive, high, high_inclusive, false);
+    }
+
+    // same as above, in decreasing key order if reverse is set
+    public IndexCursor<T> scan(T low, boolean low_inclusive, T high, boolean high_inclusive, boolean reverse) {
+        long stamp = this.latch.readLock();
+        try{
+            KeyProbe lowProbe = low == null ? null : this.probe(low);
+            KeyProbe highProbe = high == null ? null : this.probe(high);
+            return this.scanShared(lowProbe, low_inclusive, highProbe, high_inclusive, reverse);
+        } finally {
+            this.latch.unlockRead(stamp);
+        }
+    }
+
+    // the tree latch is held shared, the first entry is found before a writer can move it
+    // a null probe is an open bound
+    private IndexCursor<T> scanShared(KeyProbe low, boolean low_inclusive, KeyProbe high, boolean high_inclusive, boolean reverse) {
+        int id;
+        if(!reverse){
+            id = low == null ? this.firstLeaf() : this.findLeafNode(low, 0);
+        } else {
+            id = this.findLastLeafNode(high);
+        }
+        LeafNode<T> leaf = (LeafNode<T>) this.blocks.get(id);
+        int i;
+        long leafStamp = leaf.latch.readLock();
+        try{
+            if(!reverse){
+                if(low == null){
+                    i = 0;
+                } else {
+                    i = low_inclusive ? leaf.lowerBound(low) : leaf.upperBound(low);
+                }
+            } else {
+                if(high == null){
+                    i = leaf.getNumKeys() - 1;
+                } else {
+                    i = (high_inclusive ? leaf.upperBound(high) : leaf.lowerBound(high)) - 1;
+                }
             }
+        } finally {
+            leaf.latch.unlockRead(leafStamp);
         }
-        return -1;
+        return new IndexCursor<>(this.blocks, this.latch, id, i, low, low_inclusive, high, high_inclusive, reverse);
+    }
+
+    // returns the block ids of all entries with low <= key <= high, in key order
+    public List<Integer> search_range(T low, boolean low_inclusive, T high, boolean high_inclusive) {
+        List<Integer> block_ids = new ArrayList<>();
+        IndexCursor<T> cursor = this.scan(low, low_inclusive, high, high_inclusive);
+        while(cursor.hasNext()){
+            block_ids.add(cursor.next().getValue());
+        }
+        return block_ids;
+    }
+
+    // returns the record ids of all entries with low <= key <= high, in key order, see File.record_id
+    // a record id has the slot File.NO_SLOT if its entry went in without one
+    public List<Long> search_records(T low, boolean low_inclusive, T high, boolean high_inclusive) {
+        List<Long> record_ids = new ArrayList<>();
+        IndexCursor<T> cursor = this.scan(low, low_inclusive, high, high_inclusive);
+        while(cursor.hasNext()){
+            cursor.next();
+            record_ids.add(cursor.record_id());
+        }
+        return record_ids;
     }
 
     // returns true if the key was found and deleted, false otherwise
     // (Optional for Assignment 3)
+    // removes the first entry with the key
     public boolean delete(T key) {
 
         /* Write your code here */
+        // a leaf that keeps enough entries is the only node that changes
+        KeyProbe probe = this.probe(key);
+        boolean deleted = this.changeLeaf(probe, (leafIndex, leaf) -> {
+            int i = leaf.lowerBound(probe);
+            if(i == leaf.getNumKeys() || leaf.compareAt(i, probe) != 0 || !this.canRemoveFrom(leafIndex)){
+                return false;
+            }
+            this.removeFromLeaf(leaf, i);
+            return true;
+        });
+        if(deleted){
+            return true;
+        }
+        long stamp = this.latch.writeLock();
+        try{
+            return this.deleteExclusive(probe);
+        } finally {
+            this.latch.unlockWrite(stamp);
+        }
+    }
+
+    // the tree latch is held exclusively
+    private boolean deleteExclusive(KeyProbe probe) {
+        int leafNodeIndex = this.findLeafNode(probe, 0);
+        LeafNode<T> leaf = (LeafNode<T>) this.blocks.get(leafNodeIndex);
+        int i = leaf.lowerBound(probe);
+        // B-link leaves can be empty
+        while(i == leaf.getNumKeys() && leaf.next() != 0){
+            leafNodeIndex = leaf.next();
+            leaf = (LeafNode<T>) this.blocks.get(leafNodeIndex);
+            i = 0;
+        }
+        if(i < leaf.getNumKeys() && leaf.compareAt(i, probe) == 0){
+            removeEntry(leafNodeIndex, i);
+            return true;
+        }
         return false;
     }
 
+    // removes the entry with the key that points to block_id, copies of the key can span several leaves
+    public boolean delete(T key, int block_id) {
+        return this.deleteRecord(key, block_id, ANY_SLOT);
+    }
+
+    // removes the entry with the key that points to the record in slot of block block_id
+    public boolean delete(T key, int block_id, int slot) {
+        return this.deleteRecord(key, block_id, slot);
+    }
+
+    // true if the i-th entry of leaf points to block_id and, unless slot is ANY_SLOT, to slot in it
+    private boolean matches(LeafNode<T> leaf, int i, int block_id, int slot){
+        long record_id = leaf.getRecordId(i);
+        return File.record_block(record_id) == block_id && (slot == ANY_SLOT || File.record_slot(record_id) == slot);
+    }
+
+    private boolean deleteRecord(T key, int block_id, int slot) {
+        KeyProbe probe = this.probe(key);
+        boolean deleted = this.changeLeaf(probe, (leafIndex, leaf) -> {
+            if(!this.canRemoveFrom(leafIndex)){
+                return false;
+            }
+            for(int i = leaf.lowerBound(probe); i < leaf.getNumKeys() && leaf.compareAt(i, probe) == 0; i++){
+                if(this.matches(leaf, i, block_id, slot)){
+                    this.removeFromLeaf(leaf, i);
+                    return true;
+                }
+            }
+            // the entry can still be in a later leaf
+            return false;
+        });
+        if(deleted){
+            return true;
+        }
+        long stamp = this.latch.writeLock();
+        try{
+            return this.deleteExclusive(probe, block_id, slot);
+        } finally {
+            this.latch.unlockWrite(stamp);
+        }
+    }
+
+    private boolean deleteExclusive(KeyProbe probe, int block_id, int slot) {
+        int leafNodeIndex = this.findLeafNode(probe, 0);
+        LeafNode<T> leaf = (LeafNode<T>) this.blocks.get(leafNodeIndex);
+        int i = leaf.lowerBound(probe);
+        while(true){
+            if(i == leaf.getNumKeys()){
+                if(leaf.next() == 0){
+                    return false;
+                }
+                leafNodeIndex = leaf.next();
+                leaf = (LeafNode<T>) this.blocks.get(leafNodeIndex);
+                i = 0;
+                continue;
+            }
+            if(leaf.compareAt(i, probe) != 0){
+                return false;
+            }
+            if(this.matches(leaf, i, block_id, slot)){
+                removeEntry(leafNodeIndex, i);
+                return true;
+            }
+            i++;
+        }
+    }
+
+    /*
+        * Points the entry with the key and the record in slot of block block_id to new_slot instead,
+        * for a record that moved within its block. Only the leaf changes, under its write latch
+        * Returns false if there is no such entry, or the tree does not keep record slots
+    */
+    public boolean update_slot(T key, int block_id, int slot, int new_slot) {
+        KeyProbe probe = this.probe(key);
+        long stamp = this.latch.readLock();
+        try{
+            if((this.format() & BlockNode.RECORD_SLOTS) == 0){
+                return false;
+            }
+            int id = this.findLeafNode(probe, 0);
+            while(id != 0){
+                LeafNode<T> leaf = (LeafNode<T>) this.blocks.get(id);
+                long leafStamp = leaf.latch.writeLock();
+                try{
+                    for(int i = leaf.lowerBound(probe); i < leaf.getNumKeys(); i++){
+                        if(leaf.compareAt(i, probe) != 0){
+                            return false;
+                        }
+                        if(this.matches(leaf, i, block_id, slot)){
+                            leaf.setRecordSlot(i, new_slot);
+                            return true;
+                        }
+                    }
+                    id = leaf.next();
+                } finally {
+                    leaf.latch.unlockWrite(leafStamp);
+                }
+            }
+            return false;
+        } finally {
+            this.latch.unlockRead(stamp);
+        }
+    }
+
+    // fewest keys a node other than the root keeps, what the left half of a split gets
+    private int minKeys(){
+        return Math.max(1, ((this.getOrder() + 1) / 2) - 1);
+    }
+
+    // a leaf that can lose an entry without being rebalanced
+    private boolean canRemoveFrom(int leafIndex){
+        return this.blink || leafIndex == this.getRootId() || this.blocks.get(leafIndex).getNumKeys() > this.minKeys();
+    }
+
+    private void removeFromLeaf(LeafNode<T> leaf, int i){
+        this.keepFirst(leaf, removeAt(leaf.getKeys(), i), removeAt(leaf.getRecordIds(), i), leaf.getNumKeys() - 1);
+    }
+
+    // position of child_id among the children of the internal node parentIndex
+    private int childIndex(int parentIndex, int child_id){
+        return this.childPosition(((InternalNode<T>) this.blocks.get(parentIndex)).getChildren(), child_id);
+    }
+
+    private static <E> E[] removeAt(E[] values, int i){
+        E[] result = (E[]) new Object[values.length - 1];
+        System.arraycopy(values, 0, result, 0, i);
+        System.arraycopy(values, i + 1, result, i, values.length - i - 1);
+        return result;
+    }
+
+    private static int[] removeAt(int[] values, int i){
+        int[] result = new int[values.length - 1];
+        System.arraycopy(values, 0, result, 0, i);
+        System.arraycopy(values, i + 1, result, i, values.length - i - 1);
+        return result;
+    }
+
+    private static long[] removeAt(long[] values, int i){
+        long[] result = new long[values.length - 1];
+        System.arraycopy(values, 0, result, 0, i);
+        System.arraycopy(values, i + 1, result, i, values.length - i - 1);
+        return result;
+    }
+
+    // drops the i-th key and the child to its right from an internal node
+    private void removeKeyAndRightChild(InternalNode<T> node, int i){
+        this.keepFirst(node, removeAt(node.getKeys(), i), removeAt(node.getChildren(), i + 1), node.getNumKeys() - 1);
+    }
+
+    private void setKey(InternalNode<T> node, int i, T key){
+        T[] keys = node.getKeys();
+        keys[i] = key;
+        this.keepFirst(node, keys, node.getChildren(), keys.length);
+    }
+
+    /*
+        * Removes the i-th entry of a leaf, a leaf left with fewer than minKeys entries first borrows
+        * an entry from a sibling under the same parent - the prev or next leaf - and is merged into
+        * one of them when neither can spare one. A merge takes a key out of the parent, which is
+        * then fixed the same way up to the root, a B-link tree only removes the entry
+    */
+    private void removeEntry(int leafIndex, int i){
+        LeafNode<T> leaf = (LeafNode<T>) this.blocks.get(leafIndex);
+        this.writeNode(leaf, () -> this.removeFromLeaf(leaf, i));
+        if(this.blink || leafIndex == this.getRootId() || leaf.getNumKeys() >= this.minKeys()){
+            return;
+        }
+
+        int parentIndex = leaf.getParentIndex();
+        InternalNode<T> parent = (InternalNode<T>) this.blocks.get(parentIndex);
+        int position = this.childIndex(parentIndex, leafIndex);
+        int leftIndex = position > 0 ? leaf.prev() : 0;
+        int rightIndex = position < parent.getNumKeys() ? leaf.next() : 0;
+
+        if(leftIndex != 0 && this.blocks.get(leftIndex).getNumKeys() > this.minKeys()){
+            // last entry of the left sibling moves over, it becomes the separator
+            LeafNode<T> left = (LeafNode<T>) this.blocks.get(leftIndex);
+            int last = left.getNumKeys() - 1;
+            T key = left.getKey(last);
+            long record_id = left.getRecordId(last);
+            left.removeAllKeysFrom(last);
+            this.keepFirst(leaf, prepend(leaf.getKeys(), key), prepend(leaf.getRecordIds(), record_id), leaf.getNumKeys() + 1);
+            this.setKey(parent, position - 1, this.separator(left.getKey(last - 1), key));
+            return;
+        }
+        if(rightIndex != 0 && this.blocks.get(rightIndex).getNumKeys() > this.minKeys()){
+            // first entry of the right sibling moves over, its next key becomes the separator
+            LeafNode<T> right = (LeafNode<T>) this.blocks.get(rightIndex);
+            leaf.appendRecord(right.getKey(0), right.getRecordId(0));
+            this.keepFirst(right, removeAt(right.getKeys(), 0), removeAt(right.getRecordIds(), 0), right.getNumKeys() - 1);
+            this.setKey(parent, position, this.separator(leaf.getKey(leaf.getNumKeys() - 1), right.getKey(0)));
+            return;
+        }
+
+        // merge the right one of the two leaves into the left one
+        int mergedIndex = leftIndex != 0 ? leafIndex : rightIndex;
+        int keptIndex = leftIndex != 0 ? leftIndex : leafIndex;
+        LeafNode<T> merged = (LeafNode<T>) this.blocks.get(mergedIndex);
+        LeafNode<T> kept = (LeafNode<T>) this.blocks.get(keptIndex);
+        T[] keys = merged.getKeys();
+        long[] record_ids = merged.getRecordIds();
+        for(int j = 0; j < keys.length; j++){
+            kept.appendRecord(keys[j], record_ids[j]);
+        }
+        kept.setNext(merged.next());
+        if(merged.next() != 0){
+            ((LeafNode<T>) this.blocks.get(merged.next())).setPrev(keptIndex);
+        }
+        merged.removeAllKeysFrom(0);
+        merged.setNext(0);
+        merged.setPrev(0);
+        merged.setParentIndex(-1);
+        this.removeKeyAndRightChild(parent, this.childIndex(parentIndex, mergedIndex) - 1);
+        this.fixInternal(parentIndex);
+    }
+
+    private static <E> E[] prepend(E[] values, E value){
+        E[] result = (E[]) new Object[values.length + 1];
+        result[0] = value;
+        System.arraycopy(values, 0, result, 1, values.length);
+        return result;
+    }
+
+    private static int[] prepend(int[] values, int value){
+        int[] result = new int[values.length + 1];
+        result[0] = value;
+        System.arraycopy(values, 0, result, 1, values.length);
+        return result;
+    }
+
+    private static long[] prepend(long[] values, long value){
+        long[] result = new long[values.length + 1];
+        result[0] = value;
+        System.arraycopy(values, 0, result, 1, values.length);
+        return result;
+    }
+
+    // rebalances an internal node after it lost a key, the tree gets one level shorter once the root has no key left
+    private void fixInternal(int nodeIndex){
+        InternalNode<T> node = (InternalNode<T>) this.blocks.get(nodeIndex);
+        if(nodeIndex == this.getRootId()){
+            if(node.getNumKeys() == 0){
+                int child = node.getChild(0);
+                this.updateRootIndex(child);
+                this.setParentIndex(child, -1);
+                node.setParentIndex(-1);
+            }
+            return;
+        }
+        if(node.getNumKeys() >= this.minKeys()){
+            return;
+        }
+
+        int parentIndex = node.getParentIndex();
+        InternalNode<T> parent = (InternalNode<T>) this.blocks.get(parentIndex);
+        int position = this.childIndex(parentIndex, nodeIndex);
+        int leftIndex = position > 0 ? parent.getChild(position - 1) : 0;
+        int rightIndex = position < parent.getNumKeys() ? parent.getChild(position + 1) : 0;
+
+        if(leftIndex != 0 && this.blocks.get(leftIndex).getNumKeys() > this.minKeys()){
+            // rotate right, the separator comes down and the last key of the left sibling goes up
+            InternalNode<T> left = (InternalNode<T>) this.blocks.get(leftIndex);
+            T[] leftKeys = left.getKeys();
+            int[] leftChildren = left.getChildren();
+            int moved = leftChildren[leftChildren.length - 1];
+            int[] children = prepend(node.getChildren(), moved);
+            this.keepFirst(node, prepend(node.getKeys(), parent.getKey(position - 1)), children, node.getNumKeys() + 1);
+            this.setKey(parent, position - 1, leftKeys[leftKeys.length - 1]);
+            left.removeAllKeysFrom(leftKeys.length - 1);
+            this.setParentIndex(moved, nodeIndex);
+            return;
+        }
+        if(rightIndex != 0 && this.blocks.get(rightIndex).getNumKeys() > this.minKeys()){
+            // rotate left, the separator comes down and the first key of the right sibling goes up
+            InternalNode<T> right = (InternalNode<T>) this.blocks.get(rightIndex);
+            T[] rightKeys = right.getKeys();
+            int[] rightChildren = right.getChildren();
+            node.append(parent.getKey(position), rightChildren[0]);
+            this.setParentIndex(rightChildren[0], nodeIndex);
+            this.setKey(parent, position, rightKeys[0]);
+            this.keepFirst(right, removeAt(rightKeys, 0), removeAt(rightChildren, 0), rightKeys.length - 1);
+            return;
+        }
+
+        // merge the right one of the two nodes into the left one, with the separator between them
+        int mergedIndex = leftIndex != 0 ? nodeIndex : rightIndex;
+        int keptIndex = leftIndex != 0 ? leftIndex : nodeIndex;
+        InternalNode<T> merged = (InternalNode<T>) this.blocks.get(mergedIndex);
+        InternalNode<T> kept = (InternalNode<T>) this.blocks.get(keptIndex);
+        int separator = this.childIndex(parentIndex, mergedIndex) - 1;
+        T[] keys = merged.getKeys();
+        int[] children = merged.getChildren();
+        kept.append(parent.getKey(separator), children[0]);
+        for(int j = 0; j < keys.length; j++){
+            kept.append(keys[j], children[j + 1]);
+        }
+        for(int child : children){
+            this.setParentIndex(child, keptIndex);
+        }
+        merged.removeAllKeysFrom(0);
+        merged.setParentIndex(-1);
+        this.removeKeyAndRightChild(parent, separator);
+        this.fixInternal(parentIndex);
+    }
+
     public List<BlockNode> return_blocks(){
         return this.blocks;
     }
@@ -2,9 +2,19 @@ package index.bplusTree;
 
 import storage.AbstractBlock;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.locks.StampedLock;
+
 // Extends AbstractBlock, will be extended by InternalNode and LeafNode
 public class BlockNode extends AbstractBlock {
     public static int counter=0;
+
+    // latch on the bytes of this node, taken by writers that change a single leaf and by the
+    // readers of leaves, see BPlusTreeIndexFile
+    final StampedLock latch = new StampedLock();
+
     public BlockNode(byte[] data) {
         super(data);
     }
@@ -15,7 +25,228 @@ public class BlockNode extends AbstractBlock {
 
     public int getNumKeys() {
         counter+=1;
-        byte[] numKeysBytes = this.get_data(0, 2);
-        return (numKeysBytes[0] << 8) | (numKeysBytes[1] & 0xFF);
+        return this.get_short(0);
+    }
+
+    /*
+        * Slot directory - grows backwards from the end of the block
+        * slot_i is 2 bytes at block_capacity - 2 * (i + 1) and holds the offset of the i-th entry
+        * Entries stay in key order, so slots let a node be binary searched in place
+    */
+    protected int getSlot(int i) {
+        return this.get_short(block_capacity - 2 * (i + 1));
+    }
+
+    protected void setSlot(int i, int offset) {
+        this.write_short(block_capacity - 2 * (i + 1), offset);
+    }
+
+    // makes slot i point to offset, the entries behind the old slots i..numSlots-1 moved right by shift bytes
+    protected void insertSlot(int i, int numSlots, int offset, int shift) {
+        for(int j = numSlots; j > i; j--){
+            setSlot(j, getSlot(j - 1) + shift);
+        }
+        setSlot(i, offset);
+    }
+
+    protected void clearSlotsFrom(int i, int numSlots) {
+        if(i < numSlots){
+            Arrays.fill(this.data, block_capacity - 2 * numSlots, block_capacity - 2 * i, (byte) 0);
+        }
+    }
+
+    /*
+        * Format of the tree the node belongs to, a set of flags - 0 is the original layout
+        * INT_IDS - ids of other blocks (children, prev and next leaves, block ids of leaf entries)
+        * take 4 bytes instead of 2, a tree needs them once it holds an id above MAX_SHORT_ID
+        * RECORD_SLOTS - leaf entries also keep the slot of their record in its data block
+        * All nodes of a tree have the format of the tree, see BPlusTreeIndexFile
+    */
+    static final int INT_IDS = 1;
+    static final int RECORD_SLOTS = 2;
+
+    static final int MAX_SHORT_ID = 0xFFFF;
+
+    int format;
+
+    protected boolean hasFormat(int flag) {
+        return (this.format & flag) != 0;
+    }
+
+    protected int idBytes() {
+        return this.hasFormat(INT_IDS) ? 4 : 2;
+    }
+
+    protected int getId(int offset) {
+        return this.hasFormat(INT_IDS) ? this.get_int(offset) : this.get_short(offset);
+    }
+
+    protected void writeId(int offset, int id) {
+        if (this.hasFormat(INT_IDS)) {
+            this.write_int(offset, id);
+        } else {
+            this.write_short(offset, id);
+        }
+    }
+
+    /*
+        * Prefix compression of string keys - a node keeps the prefix shared by all its keys once,
+        * and each entry only stores the rest of its key, see LeafNode and InternalNode
+        * The prefix is cut at a character, so prefix and suffix bytes decode on their own
+    * String keys are stored as UTF-8
+    */
+    // position and length in bytes of the prefix, a node without one has length 0
+    protected int prefixOffset() {
+        return 0;
+    }
+
+    protected int prefixLength() {
+        return 0;
+    }
+
+    /*
+        * Decoded prefix - only written along with the prefix bytes, by the constructors and by a
+        * rewrite of the node under its write latch. Readers that hold no latch read it like any
+        * other part of the node and validate their stamp after, they never write it
+    */
+    volatile String prefix = "";
+
+    protected String getPrefix() {
+        return this.prefix;
+    }
+
+    // longest common prefix of two strings that does not split a surrogate pair
+    protected static String commonPrefix(String a, String b) {
+        int n = 0;
+        int limit = Math.min(a.length(), b.length());
+        while (n < limit && a.charAt(n) == b.charAt(n)) {
+            n++;
+        }
+        if (n > 0 && Character.isHighSurrogate(a.charAt(n - 1))) {
+            n--;
+        }
+        return a.substring(0, n);
+    }
+
+    /*
+        * Compares prefix + the suffix stored at [offset, offset + length) with key, same sign as compareTo
+        * The prefix is checked first, then the suffix is compared in place one character at a time
+    */
+    private int compareStringAt(int offset, int length, String key) {
+        String prefix = this.getPrefix();
+        int p = prefix.length();
+        int n = Math.min(p, key.length());
+        for (int j = 0; j < n; j++) {
+            char c = prefix.charAt(j);
+            char k = key.charAt(j);
+            if (c != k) {
+                return c - k;
+            }
+        }
+        if (key.length() < p) {
+            // the key ends inside the prefix
+            return 1;
+        }
+        return this.compareUtf8At(offset, offset + length, key, p);
+    }
+
+    // compares the UTF-8 bytes in [offset, end) with key from index from on, as compareTo would compare
+    // the decoded string with key.substring(from), the bytes are decoded as they are compared
+    private int compareUtf8At(int offset, int end, String key, int from) {
+        int i = offset;
+        int j = from;
+        // second half of a surrogate pair, a 4 byte sequence decodes to two chars
+        char low = 0;
+        while (true) {
+            char c;
+            if (low != 0) {
+                c = low;
+                low = 0;
+            } else if (i < end) {
+                int b = this.data[i] & 0xFF;
+                if (b < 0x80) {
+                    c = (char) b;
+                    i += 1;
+                } else if (b < 0xE0) {
+                    c = (char) (((b & 0x1F) << 6) | (this.data[i + 1] & 0x3F));
+                    i += 2;
+                } else if (b < 0xF0) {
+                    c = (char) (((b & 0x0F) << 12) | ((this.data[i + 1] & 0x3F) << 6) | (this.data[i + 2] & 0x3F));
+                    i += 3;
+                } else {
+                    int codePoint = ((b & 0x07) << 18) | ((this.data[i + 1] & 0x3F) << 12)
+                            | ((this.data[i + 2] & 0x3F) << 6) | (this.data[i + 3] & 0x3F);
+                    c = Character.highSurrogate(codePoint);
+                    low = Character.lowSurrogate(codePoint);
+                    i += 4;
+                }
+            } else {
+                // the stored key ended
+                return j < key.length() ? -1 : 0;
+            }
+            if (j == key.length()) {
+                return 1;
+            }
+            char k = key.charAt(j++);
+            if (c != k) {
+                return c - k;
+            }
+        }
+    }
+
+    // compares the key stored at [offset, offset + length) with key, same order as TreeNode.compare
+    // only string keys are decoded, the other types are compared in place
+    protected <T> int compareKeyAt(int offset, int length, T key, Class<T> typeClass) {
+        if (typeClass.equals(Integer.class)) {
+            return Integer.compare(this.get_int(offset), (Integer) key);
+        } else if (typeClass.equals(Double.class)) {
+            return Double.compare(this.get_double(offset), (Double) key);
+        } else if (typeClass.equals(Long.class)) {
+            return Long.compare(this.get_long(offset), (Long) key);
+        } else if (typeClass.equals(Float.class)) {
+            return Float.compare(Float.intBitsToFloat(this.get_int(offset)), (Float) key);
+        } else if (typeClass.equals(Short.class)) {
+            return Short.compare((short) this.get_short(offset), (Short) key);
+        } else if (typeClass.equals(Byte.class)) {
+            return Byte.compare(this.data[offset], (Byte) key);
+        } else if (typeClass.equals(Boolean.class)) {
+            return Boolean.compare(this.data[offset] != 0, (Boolean) key);
+        } else if (typeClass.equals(Date.class)) {
+            return Long.compare(this.get_long(offset), ((Date) key).getTime());
+        } else if (typeClass.equals(String.class)) {
+            return this.compareStringAt(offset, length, (String) key);
+        }
+        T stored = readKey(offset, length, typeClass);
+        if (stored instanceof Comparable && key instanceof Comparable) {
+            return ((Comparable<T>) stored).compareTo(key);
+        }
+        return stored.toString().compareTo(key.toString());
+    }
+
+    // decodes the key stored at [offset, offset + length) without copying it out of the block
+    // same encoding as TreeNode.convertTToBytes
+    protected <T> T readKey(int offset, int length, Class<T> typeClass) {
+        if (typeClass.equals(Integer.class)) {
+            return (T) Integer.valueOf(this.get_int(offset));
+        } else if (typeClass.equals(String.class)) {
+            String suffix = new String(this.data, offset, length, StandardCharsets.UTF_8);
+            return (T) (this.prefixLength() == 0 ? suffix : this.getPrefix() + suffix);
+        } else if (typeClass.equals(Double.class)) {
+            return (T) Double.valueOf(this.get_double(offset));
+        } else if (typeClass.equals(Date.class)) {
+            return (T) new Date(this.get_long(offset));
+        } else if (typeClass.equals(Boolean.class)) {
+            return (T) Boolean.valueOf(this.data[offset] != 0);
+        } else if (typeClass.equals(Byte.class)) {
+            return (T) Byte.valueOf(this.data[offset]);
+        } else if (typeClass.equals(Short.class)) {
+            return (T) Short.valueOf((short) this.get_short(offset));
+        } else if (typeClass.equals(Float.class)) {
+            return (T) Float.valueOf(Float.intBitsToFloat(this.get_int(offset)));
+        } else if (typeClass.equals(Long.class)) {
+            return (T) Long.valueOf(this.get_long(offset));
+        } else {
+            return null;
+        }
     }
 }
\ No newline at end of file
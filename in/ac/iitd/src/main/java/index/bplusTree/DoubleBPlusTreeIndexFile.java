@@ -0,0 +1,61 @@
+package index.bplusTree;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    * B+ tree over DOUBLE keys
+    * A lookup holds the search key as a double and compares it with the 8 byte keys of the nodes
+    * in place, with the order of Double.compare, see IntBPlusTreeIndexFile
+ */
+public class DoubleBPlusTreeIndexFile extends BPlusTreeIndexFile<Double> {
+
+    public DoubleBPlusTreeIndexFile(int order) {
+        super(order, Double.class);
+    }
+
+    public DoubleBPlusTreeIndexFile(int order, boolean blink) {
+        super(order, Double.class, blink);
+    }
+
+    static KeyProbe doubleProbe(double key) {
+        return new KeyProbe() {
+            @Override
+            public int compareStored(BlockNode node, int offset, int length) {
+                return Double.compare(node.get_double(offset), key);
+            }
+
+            @Override
+            public int compareKey(Object stored) {
+                return Double.compare((Double) stored, key);
+            }
+        };
+    }
+
+    @Override
+    KeyProbe probe(Double key) {
+        return doubleProbe(key);
+    }
+
+    // returns the block_id of the leftmost leaf node containing the key, -1 if there is none
+    public int search(double key) {
+        return this.search(doubleProbe(key));
+    }
+
+    // the keys are unboxed once, the stable sort then compares primitives
+    @Override
+    int[] sortOrder(List<Double> keys) {
+        double[] values = new double[keys.size()];
+        Integer[] order = new Integer[values.length];
+        for(int i = 0; i < values.length; i++){
+            values[i] = keys.get(i);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+        int[] positions = new int[order.length];
+        for(int i = 0; i < order.length; i++){
+            positions[i] = order[i];
+        }
+        return positions;
+    }
+}
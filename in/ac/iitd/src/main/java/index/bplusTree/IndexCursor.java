@@ -0,0 +1,154 @@
+package index.bplusTree;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.StampedLock;
+
+/*
+    * Cursor over the (key, block_id) entries of a BPlusTreeIndexFile between two bounds, returned as map entries
+    * Starts at an entry in a leaf and follows the next (or prev, in reverse) leaf links,
+    * an entry is only read when the cursor reaches it
+
+    * A null bound is open, the inclusive flags make the bounds strict when false
+    * Created through BPlusTreeIndexFile.scan, record_id gives the record id of the entry next returned
+
+    * Each step holds the tree latch shared and reads the leaf under its read latch, so it sees whole
+    * entries. Between steps writers go on, a cursor that runs along with them may miss entries
+    * inserted behind it or moved by a split or a merge
+ */
+public class IndexCursor<T> implements Iterator<Map.Entry<T, Integer>> {
+
+    private final List<BlockNode> blocks;
+    private final StampedLock latch;
+    // the bounds as the leaves compare them, null when open
+    private final KeyProbe low;
+    private final boolean low_inclusive;
+    private final KeyProbe high;
+    private final boolean high_inclusive;
+    private final boolean reverse;
+
+    // position of the next entry to look at, id 0 once the cursor ran off the leaves
+    private int id;
+    private int index;
+
+    // index in a leaf the reverse scan has just moved to, its last entry once the leaf is latched
+    private static final int END = Integer.MAX_VALUE;
+
+    // entry returned by the next call to next(), null when there is none
+    private Map.Entry<T, Integer> pending;
+    private long pendingRecord;
+
+    // record id of the entry last returned by next(), see File.record_id
+    private long record_id;
+
+    // the caller holds the tree latch shared while the first entry is read
+    IndexCursor(List<BlockNode> blocks, StampedLock latch, int id, int index, KeyProbe low, boolean low_inclusive, KeyProbe high, boolean high_inclusive, boolean reverse) {
+        this.blocks = blocks;
+        this.latch = latch;
+        this.id = id;
+        this.index = index;
+        this.low = low;
+        this.low_inclusive = low_inclusive;
+        this.high = high;
+        this.high_inclusive = high_inclusive;
+        this.reverse = reverse;
+        advanceShared();
+    }
+
+    private void advance() {
+        long stamp = latch.readLock();
+        try{
+            advanceShared();
+        } finally {
+            latch.unlockRead(stamp);
+        }
+    }
+
+    // moves to the next entry within the bounds
+    private void advanceShared() {
+        pending = null;
+        while(id != 0){
+            LeafNode<T> leaf = (LeafNode<T>) blocks.get(id);
+            long leafStamp = leaf.latch.readLock();
+            try{
+                if(step(leaf)){
+                    return;
+                }
+            } finally {
+                leaf.latch.unlockRead(leafStamp);
+            }
+        }
+    }
+
+    // looks at the entry at index of leaf, true once the scan found an entry or ended
+    private boolean step(LeafNode<T> leaf) {
+        if(reverse && index >= leaf.getNumKeys()){
+            // the leaf just moved to, or one that lost entries to a writer since the last step
+            index = leaf.getNumKeys() - 1;
+        }
+        if(!reverse && index >= leaf.getNumKeys()){
+            id = leaf.next();
+            index = 0;
+            return false;
+        }
+        if(reverse && index < 0){
+            id = leaf.prev();
+            index = END;
+            return false;
+        }
+        int i = index;
+        index += reverse ? -1 : 1;
+
+        // the bound on the far side ends the scan, the near one only skips equal keys
+        // as copies of a key can spread over several leaves
+        if(!reverse){
+            if(high != null){
+                int cmp = leaf.compareAt(i, high);
+                if(cmp > 0 || (cmp == 0 && !high_inclusive)){
+                    id = 0;
+                    return true;
+                }
+            }
+            if(low != null && !low_inclusive && leaf.compareAt(i, low) == 0){
+                return false;
+            }
+        } else {
+            if(low != null){
+                int cmp = leaf.compareAt(i, low);
+                if(cmp < 0 || (cmp == 0 && !low_inclusive)){
+                    id = 0;
+                    return true;
+                }
+            }
+            if(high != null && !high_inclusive && leaf.compareAt(i, high) == 0){
+                return false;
+            }
+        }
+        pending = new AbstractMap.SimpleImmutableEntry<>(leaf.getKey(i), leaf.getBlockId(i));
+        pendingRecord = leaf.getRecordId(i);
+        return true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return pending != null;
+    }
+
+    @Override
+    public Map.Entry<T, Integer> next() {
+        if(pending == null){
+            throw new NoSuchElementException();
+        }
+        Map.Entry<T, Integer> entry = pending;
+        record_id = pendingRecord;
+        advance();
+        return entry;
+    }
+
+    public long record_id() {
+        return record_id;
+    }
+}
@@ -0,0 +1,61 @@
+package index.bplusTree;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    * B+ tree over INTEGER keys, the *_id columns
+    * Same nodes and algorithms as BPlusTreeIndexFile, but a lookup holds the search key as an int
+    * and compares it with the 4 byte keys of the nodes in place, nothing is boxed or decoded on the
+    * way down. Bulk loads sort the keys as primitives too
+ */
+public class IntBPlusTreeIndexFile extends BPlusTreeIndexFile<Integer> {
+
+    public IntBPlusTreeIndexFile(int order) {
+        super(order, Integer.class);
+    }
+
+    public IntBPlusTreeIndexFile(int order, boolean blink) {
+        super(order, Integer.class, blink);
+    }
+
+    static KeyProbe intProbe(int key) {
+        return new KeyProbe() {
+            @Override
+            public int compareStored(BlockNode node, int offset, int length) {
+                return Integer.compare(node.get_int(offset), key);
+            }
+
+            @Override
+            public int compareKey(Object stored) {
+                return Integer.compare((Integer) stored, key);
+            }
+        };
+    }
+
+    @Override
+    KeyProbe probe(Integer key) {
+        return intProbe(key);
+    }
+
+    // returns the block_id of the leftmost leaf node containing the key, -1 if there is none
+    public int search(int key) {
+        return this.search(intProbe(key));
+    }
+
+    // the key goes to the high half of a long and its position to the low half, so sorting the
+    // longs orders them by key and keeps equal keys in scan order
+    @Override
+    int[] sortOrder(List<Integer> keys) {
+        long[] packed = new long[keys.size()];
+        for(int i = 0; i < packed.length; i++){
+            packed[i] = ((long) keys.get(i) << 32) | i;
+        }
+        Arrays.sort(packed);
+        int[] order = new int[packed.length];
+        for(int i = 0; i < packed.length; i++){
+            order[i] = (int) packed[i];
+        }
+        return order;
+    }
+}
@@ -1,7 +1,13 @@
 package index.bplusTree;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 /*
-    * Internal Node - num Keys | ptr to next free offset | P_1 | len(K_1) | K_1 | P_2 | len(K_2) | K_2 | ... | P_n
+    * Internal Node - num Keys | ptr to next free offset | len(prefix) | prefix | P_1 | len(K_1) | K_1 | P_2 | len(K_2) | K_2 | ... | P_n | ... | slot_n-1 ... slot_1
+    * slot_i is the offset of len(K_i), see BlockNode
+    * P_i is 2 bytes, or 4 in a tree with INT_IDS
+    * String keys only store what follows the prefix shared by the node, other types have an empty prefix
     * Only write code where specified
 
     * Remember that each Node is a block in the Index file, thus, P_i is the block_id of the child node
@@ -12,28 +18,31 @@ public class InternalNode<T> extends BlockNode implements TreeNode<T> {
     Class<T> typeClass;
     int parentIndex;
 
+    // largest key below the node and the node to its right on the same level, null and 0 for the last node
+    // keys above the high key moved to the right node in a split, see BPlusTreeIndexFile
+    T highKey;
+    int rightLink;
+
     // Constructor - expects the key, left and right child ids
     public InternalNode(T key, int left_child_id, int right_child_id, Class<T> typeClass) {
+        this(key, left_child_id, right_child_id, typeClass, 0);
+    }
+
+    // node in a tree of the given format, see BlockNode
+    public InternalNode(T key, int left_child_id, int right_child_id, Class<T> typeClass, int format) {
 
         super();
         this.typeClass = typeClass;
-        byte[] numKeysBytes = new byte[2];
-        numKeysBytes[0] = 0;
-        numKeysBytes[1] = 0;
-
-        this.write_data(0, numKeysBytes);
+        this.format = format;
+        this.write_short(0, 0);
 
-        byte[] child_1 = new byte[2];
-        child_1[0] = (byte) ((left_child_id >> 8) & 0xFF);
-        child_1[1] = (byte) (left_child_id & 0xFF);
+        // no prefix yet, P_1 right after its length
+        this.write_short(4, 0);
+        this.prefix = "";
 
-        this.write_data(4, child_1);
+        this.writeId(this.firstChildOffset(), left_child_id);
 
-        byte[] nextFreeOffsetBytes = new byte[2];
-        nextFreeOffsetBytes[0] = 0;
-        nextFreeOffsetBytes[1] = 6;
-
-        this.write_data(2, nextFreeOffsetBytes);
+        this.write_short(2, this.firstChildOffset() + this.idBytes());
 
         // also calls the insert method
         this.insert(key, right_child_id);
@@ -51,13 +60,12 @@ public class InternalNode<T> extends BlockNode implements TreeNode<T> {
         T[] keys = (T[]) new Object[numKeys];
 
         /* Write your code here */
-        int offset = 4;
+        int offset = this.firstChildOffset() + this.idBytes();
 
         for (int i = 0; i < numKeys; i++) {
-            byte[] keyLengthBytes = this.get_data(offset + 2, 2);
-            int keyLength = (keyLengthBytes[0] << 8) | (keyLengthBytes[1] & 0xFF);
-            keys[i] = this.convertBytesToT(this.get_data(offset + 4, keyLength), typeClass);
-            offset += keyLength + 4;
+            int keyLength = this.get_short(offset);
+            keys[i] = this.readKey(offset + 2, keyLength, typeClass);
+            offset += 2 + keyLength + this.idBytes();
         }
 
         return keys;
@@ -65,21 +73,104 @@ public class InternalNode<T> extends BlockNode implements TreeNode<T> {
     // numKeys show after which part we have to remove the keys
     public void removeAllKeysFrom(int numKeys){
         
-        int offset = 4;
+        int offset = this.firstChildOffset() + this.idBytes();
         for(int i=0; i<numKeys; i++){
-            byte[] keyLengthBytes = this.get_data(offset+2, 2);
-            int keyLength = (keyLengthBytes[0] << 8) | (keyLengthBytes[1] & 0xFF);
-            offset += keyLength + 4;
+            int keyLength = this.get_short(offset);
+            offset += 2 + keyLength + this.idBytes();
+        }
+        int nextEmptyIndex = this.get_short(2);
+        Arrays.fill(this.data, offset, nextEmptyIndex, (byte) 0);
+        this.clearSlotsFrom(numKeys, this.get_short(0));
+        this.write_short(2, offset);
+        this.write_short(0, numKeys);
+    }
+
+
+    public T getHighKey() {
+        return highKey;
+    }
+
+    public void setHighKey(T highKey) {
+        this.highKey = highKey;
+    }
+
+    public int getRightLink() {
+        return rightLink;
+    }
+
+    public void setRightLink(int rightLink) {
+        this.rightLink = rightLink;
+    }
+
+    public void setFirstChild(int child_id) {
+        this.writeId(this.firstChildOffset(), child_id);
+    }
+
+    @Override
+    protected int prefixOffset() {
+        return 6;
+    }
+
+    @Override
+    protected int prefixLength() {
+        return this.get_short(4);
+    }
+
+    // offset of P_1, right after the prefix
+    private int firstChildOffset() {
+        return 6 + this.prefixLength();
+    }
+
+    // keys are written again under prefix in the given format, every key has to start with it
+    private void rewrite(String prefix, int format) {
+        T[] keys = this.getKeys();
+        int[] children = this.getChildren();
+        this.removeAllKeysFrom(0);
+        Arrays.fill(this.data, 4, this.firstChildOffset() + this.idBytes(), (byte) 0);
+        this.format = format;
+        byte[] prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+        this.write_short(4, prefixBytes.length);
+        this.write_data(6, prefixBytes);
+        this.prefix = prefix;
+        this.writeId(this.firstChildOffset(), children[0]);
+        this.write_short(2, this.firstChildOffset() + this.idBytes());
+        for (int i = 0; i < keys.length; i++) {
+            this.append(keys[i], children[i + 1]);
+        }
+    }
+
+    // writes the node again in the format of its tree
+    void reformat(int format) {
+        if (this.format != format) {
+            this.rewrite(this.getPrefix(), format);
+        }
+    }
+
+    // the longest prefix of the first and the last key is shared by all keys in between
+    public void compress() {
+        if (!typeClass.equals(String.class)) {
+            return;
+        }
+        int numKeys = this.getNumKeys();
+        String prefix = numKeys == 0 ? "" : commonPrefix((String) this.getKey(0), (String) this.getKey(numKeys - 1));
+        if (!prefix.equals(this.getPrefix())) {
+            this.rewrite(prefix, this.format);
         }
-        offset += 2;
-        byte[] emtpyIndexBytes = this.get_data(2, 2);
-        int nextEmptyIndex = ((emtpyIndexBytes[0] & 0xFF) << 8) | (emtpyIndexBytes[1] & 0xFF);
-        byte length[] = new byte[nextEmptyIndex - offset];
-        this.write_data(offset, length);
-        this.write_data(2, new byte[]{(byte) ((offset) >> 8), (byte) ((offset) & 0xFF)});
-        this.write_data(0, new byte[]{(byte) ((numKeys) >> 8), (byte) ((numKeys) & 0xFF)});
     }
 
+    // bytes stored for key, the prefix is shortened first if key does not start with it
+    private byte[] encodeKey(T key) {
+        if (!typeClass.equals(String.class) || this.prefixLength() == 0) {
+            return this.convertTToBytes(key);
+        }
+        String prefix = this.getPrefix();
+        String string = (String) key;
+        if (!string.startsWith(prefix)) {
+            prefix = commonPrefix(prefix, string);
+            this.rewrite(prefix, this.format);
+        }
+        return string.substring(prefix.length()).getBytes(StandardCharsets.UTF_8);
+    }
 
     public int getParentIndex() {
         return parentIndex;
@@ -93,77 +184,144 @@ public class InternalNode<T> extends BlockNode implements TreeNode<T> {
     @Override
     public void insert(T key, int right_block_id) {
         /* Write your code here */
+        // goes after the keys equal to it
+        this.insertAt(this.upperBound(key), key, right_block_id);
+    }
+
+    // inserts key with right_block_id as its right child, directly after the child left_child_id
+    // with duplicate keys the position can not be told from the key alone
+    public void insertAfterChild(int left_child_id, T key, int right_block_id) {
         int numKeys = this.getNumKeys();
-        byte[] emtpyIndexBytes = this.get_data(2, 2);
-        int nextEmptyIndex = ((emtpyIndexBytes[0] & 0xFF) << 8) | (emtpyIndexBytes[1] & 0xFF);
-        byte[] keyBytes = this.convertTToBytes(key);
-        int offset = 4;
         int i = 0;
-        for(i = 0; i<numKeys; i++) {
-            byte[] keyLengthBytes = this.get_data(offset + 2, 2);
-            int keyLength = ((keyLengthBytes[0] & 0xFF) << 8) | (keyLengthBytes[1] & 0xFF);
-            T currentKey = this.convertBytesToT(this.get_data(offset + 4, keyLength), typeClass);
-            if(this.compare(key, currentKey) < 0){
-                break;
-            }
-            offset += 4 + keyLength;
+        while(i < numKeys && this.getChild(i) != left_child_id){
+            i++;
         }
-        offset += 2;
+        this.insertAt(i, key, right_block_id);
+    }
+
+    // inserts key as the i-th key
+    private void insertAt(int i, T key, int right_block_id) {
+        byte[] keyBytes = this.encodeKey(key);
+        int numKeys = this.getNumKeys();
+        int nextEmptyIndex = this.get_short(2);
+        int offset = i < numKeys ? this.getSlot(i) : nextEmptyIndex;
         int keyLength = keyBytes.length;
+        int entryLength = 2 + keyLength + this.idBytes();
         
-        this.write_data(offset + 4 + keyLength, this.get_data(offset, nextEmptyIndex - offset));
+        this.move_data(offset, offset + entryLength, nextEmptyIndex - offset);
 
-        this.write_data(offset, new byte[]{(byte) (keyLength >> 8), (byte) (keyLength & 0xFF)});
+        this.write_short(offset, keyLength);
         this.write_data(offset + 2, keyBytes);
-        this.write_data(offset + 2 + keyLength, new byte[]{(byte) (right_block_id >> 8), (byte) (right_block_id & 0xFF)});
+        this.writeId(offset + 2 + keyLength, right_block_id);
+        this.insertSlot(i, numKeys, offset, entryLength);
         numKeys += 1;
-        this.write_data(0, new byte[]{(byte) (numKeys >> 8), (byte) (numKeys & 0xFF)});
-        nextEmptyIndex += 4 + keyLength;
-        this.write_data(2, new byte[]{(byte) (nextEmptyIndex >> 8), (byte) (nextEmptyIndex & 0xFF)});
+        this.write_short(0, numKeys);
+        nextEmptyIndex += entryLength;
+        this.write_short(2, nextEmptyIndex);
         
     }
 
 
 
+    // writes the key and its right child after the last child, caller makes sure keys arrive in sorted order
+    public void append(T key, int right_block_id) {
+        byte[] keyBytes = this.encodeKey(key);
+        int numKeys = this.getNumKeys();
+        int offset = this.get_short(2);
+        this.write_short(offset, keyBytes.length);
+        this.write_data(offset + 2, keyBytes);
+        this.writeId(offset + 2 + keyBytes.length, right_block_id);
+        this.setSlot(numKeys, offset);
+        this.write_short(0, numKeys + 1);
+        this.write_short(2, offset + 2 + keyBytes.length + this.idBytes());
+    }
+
     // can be used as helper function - won't be evaluated
     @Override
     public int search(T key) {
         /* Write your code here */
         int numKeys = this.getNumKeys();
-        int offset = 4;
-        for(int i=0; i < numKeys; i++){
-            byte[] keyLengthBytes = this.get_data(offset+2, 2);
-            int keyLength = (keyLengthBytes[0] << 8) | (keyLengthBytes[1] & 0xFF);
-            T currentKey = this.convertBytesToT(this.get_data(offset + 4, keyLength), typeClass);
-            if (this.compare(key, currentKey) <= 0){
-                int byteLocation = offset + keyLength + 4;
-                byte[] childBytes = this.get_data(byteLocation, 2);
-                return (childBytes[0] << 8) | (childBytes[1] & 0xFF);
-            }else {
-                offset += keyLength + 4;
+        int i = this.lowerBound(key);
+        if(i == numKeys){
+            return -1;
+        }
+        return this.getChild(i + 1);
+    }
+
+    public T getKey(int i) {
+        int offset = this.getSlot(i);
+        return this.readKey(offset + 2, this.get_short(offset), typeClass);
+    }
+
+    // P_i+1 in the layout above, child 0 is the leftmost child
+    public int getChild(int i) {
+        if(i == 0){
+            return this.getId(this.firstChildOffset());
+        }
+        int offset = this.getSlot(i - 1);
+        return this.getId(offset + 2 + this.get_short(offset));
+    }
+
+    // compares the i-th key with key
+    public int compareAt(int i, T key) {
+        int offset = this.getSlot(i);
+        return this.compareKeyAt(offset + 2, this.get_short(offset), key, typeClass);
+    }
+
+    int compareAt(int i, KeyProbe probe) {
+        int offset = this.getSlot(i);
+        return probe.compareStored(this, offset + 2, this.get_short(offset));
+    }
+
+    // index of the first key with a key >= key, num Keys if there is none
+    public int lowerBound(T key) {
+        return this.lowerBound(KeyProbe.of(key, typeClass));
+    }
+
+    int lowerBound(KeyProbe probe) {
+        int lo = 0, hi = this.getNumKeys();
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(this.compareAt(mid, probe) < 0){
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // index of the first key with a key > key, num Keys if there is none
+    public int upperBound(T key) {
+        return this.upperBound(KeyProbe.of(key, typeClass));
+    }
+
+    int upperBound(KeyProbe probe) {
+        int lo = 0, hi = this.getNumKeys();
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(this.compareAt(mid, probe) <= 0){
+                lo = mid + 1;
+            } else {
+                hi = mid;
             }
         }
-        return -1;
+        return lo;
     }
 
     // should return the block_ids of the children - will be evaluated
     public int[] getChildren() {
 
-        byte[] numKeysBytes = this.get_data(0, 2);
-        int numKeys = (numKeysBytes[0] << 8) | (numKeysBytes[1] & 0xFF);
+        int numKeys = this.get_short(0);
 
         int[] children = new int[numKeys + 1];
 
         /* Write your code here */
-        int offset = 4;
+        int offset = this.firstChildOffset();
 
         for (int i=0; i <= numKeys; i++){
-            byte[] childBlockIdBytes = this.get_data(offset, 2);
-            byte[] keyLengthBytes = this.get_data(offset+2, 2);
-            int childBlockId = (childBlockIdBytes[0] << 8) | (childBlockIdBytes[1] & 0xFF);
-            children[i] = childBlockId;
-            offset += 4 + ((keyLengthBytes[0] << 8) | (keyLengthBytes[1] & 0xFF));
-
+            children[i] = this.getId(offset);
+            offset += this.idBytes() + 2 + this.get_short(offset + this.idBytes());
         }
 
         return children;
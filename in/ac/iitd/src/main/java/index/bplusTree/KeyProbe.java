@@ -0,0 +1,35 @@
+package index.bplusTree;
+
+/*
+    * A search key as the tree compares it with the keys of its nodes
+    * Both compare methods return the sign of stored key - search key, like compareTo
+
+    * The generic probe compares through the key class, see BlockNode.compareKeyAt
+    * IntBPlusTreeIndexFile and DoubleBPlusTreeIndexFile have probes that hold the search key
+    * as a primitive and read the stored keys straight from the block
+ */
+interface KeyProbe {
+
+    // compares the key stored at [offset, offset + length) of node
+    int compareStored(BlockNode node, int offset, int length);
+
+    // compares a key kept outside of the block, the high key of a node
+    int compareKey(Object key);
+
+    static <T> KeyProbe of(T key, Class<T> typeClass) {
+        return new KeyProbe() {
+            @Override
+            public int compareStored(BlockNode node, int offset, int length) {
+                return node.compareKeyAt(offset, length, key, typeClass);
+            }
+
+            @Override
+            public int compareKey(Object stored) {
+                if (stored instanceof Comparable && key instanceof Comparable) {
+                    return ((Comparable<Object>) stored).compareTo(key);
+                }
+                return stored.toString().compareTo(key.toString());
+            }
+        };
+    }
+}
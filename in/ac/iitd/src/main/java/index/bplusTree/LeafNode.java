@@ -1,9 +1,17 @@
 package index.bplusTree;
+import storage.File;
+
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 /*
     * A LeafNode contains keys and block ids.
     * Looks Like -
-    * # entries | prev leafnode | next leafnode | ptr to next free offset | blockid_1 | len(key_1) | key_1 ...
+    * # entries | prev leafnode | next leafnode | ptr to next free offset | len(prefix) | prefix | blockid_1 | record slot_1 | len(key_1) | key_1 ... | slot_n ... slot_1
+    * slot_i is the offset of blockid_i, see BlockNode
+    * prev, next and the block ids are 2 bytes, or 4 in a tree with INT_IDS - the fields after them move along
+    * record slot_i is the slot of the record in block blockid_i, only kept in a tree with RECORD_SLOTS
+    * String keys only store what follows the prefix shared by the node, other types have an empty prefix
     *
     * Note: Only write code where specified!
  */
@@ -12,22 +20,28 @@ public class LeafNode<T> extends BlockNode implements TreeNode<T>{
     Class<T> typeClass;
     int parentIndex;
 
+    // largest key the leaf is responsible for, null for the last leaf
+    // a key above it moved to the next leaf in a split, see BPlusTreeIndexFile
+    T highKey;
+
     public LeafNode(Class<T> typeClass) {
+        this(typeClass, 0);
+    }
+
+    // node in a tree of the given format, see BlockNode
+    public LeafNode(Class<T> typeClass, int format) {
         
         super();
         this.typeClass = typeClass;
+        this.format = format;
 
         // set numEntries to 0
-        byte[] numEntriesBytes = new byte[2];
-        numEntriesBytes[0] = 0;
-        numEntriesBytes[1] = 0;
-        this.write_data(0, numEntriesBytes);
+        this.write_short(0, 0);
 
-        // set ptr to next free offset to 8
-        byte[] nextFreeOffsetBytes = new byte[2];
-        nextFreeOffsetBytes[0] = 0;
-        nextFreeOffsetBytes[1] = 8;
-        this.write_data(6, nextFreeOffsetBytes);
+        // no prefix yet, set ptr to next free offset right after its length
+        this.write_short(this.prefixLengthOffset(), 0);
+        this.prefix = "";
+        this.write_short(this.freeOffset(), this.entriesStart());
 
         // default -1 means not any parent
         this.parentIndex = -1;
@@ -43,13 +57,11 @@ public class LeafNode<T> extends BlockNode implements TreeNode<T>{
         T[] keys = (T[]) new Object[numKeys];
 
         /* Write your code here */
-        int offset = 8;
+        int offset = this.entriesStart();
 
         for (int i = 0; i < numKeys; i++) {
-            byte[] keyLengthBytes = this.get_data(offset + 2, 2);
-            int keyLength = (keyLengthBytes[0] << 8) | (keyLengthBytes[1] & 0xFF);
-            keys[i] = this.convertBytesToT(this.get_data(offset + 4, keyLength), typeClass);
-            offset += keyLength + 4;
+            keys[i] = this.readKey(this.keyOffset(offset), this.keyLength(offset), typeClass);
+            offset = this.keyOffset(offset) + this.keyLength(offset);
         }
 
         return keys;
@@ -59,18 +71,110 @@ public class LeafNode<T> extends BlockNode implements TreeNode<T>{
     // numKeys show after which part we have to remove the keys
     public void removeAllKeysFrom(int numKeys){
         
-        int offset = 8;
+        int offset = this.entriesStart();
         for(int i=0; i<numKeys; i++){
-            byte[] keyLengthBytes = this.get_data(offset+2, 2);
-            int keyLength = (keyLengthBytes[0] << 8) | (keyLengthBytes[1] & 0xFF);
-            offset += keyLength + 4;
+            offset = this.keyOffset(offset) + this.keyLength(offset);
         }
-        byte[] emtpyIndexBytes = this.get_data(6, 2);
-        int nextEmptyIndex = ((emtpyIndexBytes[0] & 0xFF) << 8) | (emtpyIndexBytes[1] & 0xFF);
-        byte length[] = new byte[nextEmptyIndex - offset];
-        this.write_data(offset, length);
-        this.write_data(6, new byte[]{(byte) ((offset) >> 8), (byte) ((offset) & 0xFF)});
-        this.write_data(0, new byte[]{(byte) ((numKeys) >> 8), (byte) ((numKeys) & 0xFF)});
+        int nextEmptyIndex = this.get_short(this.freeOffset());
+        Arrays.fill(this.data, offset, nextEmptyIndex, (byte) 0);
+        this.clearSlotsFrom(numKeys, this.get_short(0));
+        this.write_short(this.freeOffset(), offset);
+        this.write_short(0, numKeys);
+    }
+
+    // header fields after prev and next
+    private int freeOffset() {
+        return 2 + 2 * this.idBytes();
+    }
+
+    private int prefixLengthOffset() {
+        return 4 + 2 * this.idBytes();
+    }
+
+    @Override
+    protected int prefixOffset() {
+        return 6 + 2 * this.idBytes();
+    }
+
+    @Override
+    protected int prefixLength() {
+        return this.get_short(this.prefixLengthOffset());
+    }
+
+    // offset of the first entry, right after the prefix
+    private int entriesStart() {
+        return this.prefixOffset() + this.prefixLength();
+    }
+
+    private int recordSlotBytes() {
+        return this.hasFormat(RECORD_SLOTS) ? 2 : 0;
+    }
+
+    // len(key) of the entry at offset, after its block id and record slot, the key follows it
+    private int keyLengthOffset(int offset) {
+        return offset + this.idBytes() + this.recordSlotBytes();
+    }
+
+    private int keyOffset(int offset) {
+        return this.keyLengthOffset(offset) + 2;
+    }
+
+    private int keyLength(int offset) {
+        return this.get_short(this.keyLengthOffset(offset));
+    }
+
+    // entries are written again under prefix in the given format, every key has to start with it
+    private void rewrite(String prefix, int format) {
+        T[] keys = this.getKeys();
+        long[] record_ids = this.getRecordIds();
+        int prev = this.prev();
+        int next = this.next();
+        this.removeAllKeysFrom(0);
+        Arrays.fill(this.data, 2, this.entriesStart(), (byte) 0);
+        this.format = format;
+        this.setPrev(prev);
+        this.setNext(next);
+        byte[] prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+        this.write_short(this.prefixLengthOffset(), prefixBytes.length);
+        this.write_data(this.prefixOffset(), prefixBytes);
+        this.write_short(this.freeOffset(), this.entriesStart());
+        this.prefix = prefix;
+        for (int i = 0; i < keys.length; i++) {
+            this.appendRecord(keys[i], record_ids[i]);
+        }
+    }
+
+    // writes the node again in the format of its tree, entries without a record slot get NO_SLOT
+    void reformat(int format) {
+        if (this.format != format) {
+            this.rewrite(this.getPrefix(), format);
+        }
+    }
+
+    // the longest prefix of the first and the last key is shared by all keys in between
+    public void compress() {
+        if (!typeClass.equals(String.class)) {
+            return;
+        }
+        int numKeys = this.getNumKeys();
+        String prefix = numKeys == 0 ? "" : commonPrefix((String) this.getKey(0), (String) this.getKey(numKeys - 1));
+        if (!prefix.equals(this.getPrefix())) {
+            this.rewrite(prefix, this.format);
+        }
+    }
+
+    // bytes stored for key, the prefix is shortened first if key does not start with it
+    private byte[] encodeKey(T key) {
+        if (!typeClass.equals(String.class) || this.prefixLength() == 0) {
+            return this.convertTToBytes(key);
+        }
+        String prefix = this.getPrefix();
+        String string = (String) key;
+        if (!string.startsWith(prefix)) {
+            prefix = commonPrefix(prefix, string);
+            this.rewrite(prefix, this.format);
+        }
+        return string.substring(prefix.length()).getBytes(StandardCharsets.UTF_8);
     }
 
     public int getParentIndex() {
@@ -81,24 +185,28 @@ public class LeafNode<T> extends BlockNode implements TreeNode<T>{
         this.parentIndex = parentIndex;
     }
 
+    public T getHighKey() {
+        return highKey;
+    }
+
+    public void setHighKey(T highKey) {
+        this.highKey = highKey;
+    }
+
     public void setPrev(int prevNodeIndex){
-        this.write_data(2, new byte[]{(byte) ((prevNodeIndex) >> 8), (byte) ((prevNodeIndex) & 0xFF)});
+        this.writeId(2, prevNodeIndex);
     }
 
     public void setNext(int nextNodeIndex){
-        this.write_data(4, new byte[]{(byte) ((nextNodeIndex) >> 8), (byte) ((nextNodeIndex) & 0xFF)});
+        this.writeId(2 + this.idBytes(), nextNodeIndex);
     }
 
     public int next(){
-        byte[] nextNodeBytes = this.get_data(4, 2);
-        int nextNodeIndex = ((nextNodeBytes[0] & 0xFF) << 8) | (nextNodeBytes[1] & 0xFF);
-        return nextNodeIndex;
+        return this.getId(2 + this.idBytes());
     }
 
     public int prev(){
-        byte[] prevNodeBytes = this.get_data(2, 2);
-        int prevNodeIndex = ((prevNodeBytes[0] & 0xFF) << 8) | (prevNodeBytes[1] & 0xFF);
-        return prevNodeIndex;
+        return this.getId(2);
     }
 
     // returns the block ids in the node - will be evaluated
@@ -110,51 +218,155 @@ public class LeafNode<T> extends BlockNode implements TreeNode<T>{
 
         /* Write your code here */
 
-        int offset = 8;
+        int offset = this.entriesStart();
         for (int i = 0; i < numKeys; i++) {
-            byte[] keyLengthBytes = this.get_data(offset + 2, 2);
-            int keyLength = (keyLengthBytes[0] << 8) | (keyLengthBytes[1] & 0xFF);
-            byte[] blockIdBytes = this.get_data(offset, 2);
-            block_ids[i] = ((blockIdBytes[0] & 0xFF) << 8) | (blockIdBytes[1] & 0xFF);
-            offset += keyLength + 4;
+            block_ids[i] = this.getId(offset);
+            offset = this.keyOffset(offset) + this.keyLength(offset);
         }
 
         return block_ids;
     }
 
+    // record ids of the entries, see File.record_id
+    public long[] getRecordIds() {
+        int numKeys = getNumKeys();
+        long[] record_ids = new long[numKeys];
+        int offset = this.entriesStart();
+        for (int i = 0; i < numKeys; i++) {
+            record_ids[i] = this.recordIdAt(offset);
+            offset = this.keyOffset(offset) + this.keyLength(offset);
+        }
+        return record_ids;
+    }
+
+    private long recordIdAt(int offset) {
+        int slot = this.hasFormat(RECORD_SLOTS) ? this.get_short(offset + this.idBytes()) : File.NO_SLOT;
+        return File.record_id(this.getId(offset), slot);
+    }
+
+    // writes the block id and the record slot of the entry at offset
+    private void writeRecordId(int offset, long record_id) {
+        this.writeId(offset, File.record_block(record_id));
+        if (this.hasFormat(RECORD_SLOTS)) {
+            this.write_short(offset + this.idBytes(), File.record_slot(record_id));
+        }
+    }
+
     // can be used as helper function - won't be evaluated
     @Override
     public void insert(T key, int block_id) {
 
 
         /* Write your code here */
+        this.insertRecord(key, File.record_id(block_id, File.NO_SLOT));
+
+        return;
+
+    }
+
+    // the record slot is dropped if the tree does not keep them
+    public void insertRecord(T key, long record_id) {
+        byte[] keyBytes = this.encodeKey(key);
         int numKeys = this.getNumKeys();
-        byte[] emtpyIndexBytes = this.get_data(6, 2);
-        int nextEmptyIndex = ((emtpyIndexBytes[0] & 0xFF) << 8) | (emtpyIndexBytes[1] & 0xFF);
-        byte[] keyBytes = this.convertTToBytes(key);
-        int keyLength = keyBytes.length;
-        int offset = 8;
-        int i = 0;
-        for(i = 0; i<numKeys; i++){
-            T currentKey = this.convertBytesToT(this.get_data(offset + 4, keyLength), typeClass);
-            if(this.compare(key, currentKey) < 0){
-                break;
-            }
-            offset += 4 + keyLength;
-        }
+        int nextEmptyIndex = this.get_short(this.freeOffset());
+        int entryLength = this.idBytes() + this.recordSlotBytes() + 2 + keyBytes.length;
 
-        this.write_data(offset + 4 + keyLength, this.get_data(offset, nextEmptyIndex - offset));
+        // goes after the entries with an equal key
+        int i = this.upperBound(key);
+        int offset = i < numKeys ? this.getSlot(i) : nextEmptyIndex;
 
-        this.write_data(offset, new byte[]{(byte) (block_id >> 8), (byte) (block_id & 0xFF)});
-        this.write_data(offset + 2, new byte[]{(byte) (keyLength >> 8), (byte) (keyLength & 0xFF)});
-        this.write_data(offset + 4, keyBytes);
+        this.move_data(offset, offset + entryLength, nextEmptyIndex - offset);
+
+        this.writeRecordId(offset, record_id);
+        this.write_short(this.keyLengthOffset(offset), keyBytes.length);
+        this.write_data(this.keyOffset(offset), keyBytes);
+        this.insertSlot(i, numKeys, offset, entryLength);
         numKeys += 1;
-        this.write_data(0, new byte[]{(byte) (numKeys >> 8), (byte) (numKeys & 0xFF)});
-        nextEmptyIndex += 4 + keyLength;
-        this.write_data(6, new byte[]{(byte) (nextEmptyIndex >> 8), (byte) (nextEmptyIndex & 0xFF)});
+        this.write_short(0, numKeys);
+        nextEmptyIndex += entryLength;
+        this.write_short(this.freeOffset(), nextEmptyIndex);
+    }
 
-        return;
+    // writes the entry after the last one, caller makes sure keys arrive in sorted order
+    public void append(T key, int block_id) {
+        this.appendRecord(key, File.record_id(block_id, File.NO_SLOT));
+    }
 
+    public void appendRecord(T key, long record_id) {
+        byte[] keyBytes = this.encodeKey(key);
+        int numKeys = this.getNumKeys();
+        int offset = this.get_short(this.freeOffset());
+        this.writeRecordId(offset, record_id);
+        this.write_short(this.keyLengthOffset(offset), keyBytes.length);
+        this.write_data(this.keyOffset(offset), keyBytes);
+        this.setSlot(numKeys, offset);
+        this.write_short(0, numKeys + 1);
+        this.write_short(this.freeOffset(), this.keyOffset(offset) + keyBytes.length);
+    }
+
+    public T getKey(int i) {
+        int offset = this.getSlot(i);
+        return this.readKey(this.keyOffset(offset), this.keyLength(offset), typeClass);
+    }
+
+    public int getBlockId(int i) {
+        return this.getId(this.getSlot(i));
+    }
+
+    public long getRecordId(int i) {
+        return this.recordIdAt(this.getSlot(i));
+    }
+
+    // points the i-th entry to another slot of its block, the tree keeps record slots
+    void setRecordSlot(int i, int record_slot) {
+        this.write_short(this.getSlot(i) + this.idBytes(), record_slot);
+    }
+
+    // compares the i-th key with key
+    public int compareAt(int i, T key) {
+        int offset = this.getSlot(i);
+        return this.compareKeyAt(this.keyOffset(offset), this.keyLength(offset), key, typeClass);
+    }
+
+    int compareAt(int i, KeyProbe probe) {
+        int offset = this.getSlot(i);
+        return probe.compareStored(this, this.keyOffset(offset), this.keyLength(offset));
+    }
+
+    // index of the first entry with a key >= key, # entries if there is none
+    public int lowerBound(T key) {
+        return this.lowerBound(KeyProbe.of(key, typeClass));
+    }
+
+    int lowerBound(KeyProbe probe) {
+        int lo = 0, hi = this.getNumKeys();
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(this.compareAt(mid, probe) < 0){
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // index of the first entry with a key > key, # entries if there is none
+    public int upperBound(T key) {
+        return this.upperBound(KeyProbe.of(key, typeClass));
+    }
+
+    int upperBound(KeyProbe probe) {
+        int lo = 0, hi = this.getNumKeys();
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(this.compareAt(mid, probe) <= 0){
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
     }
 
     // can be used as helper function - won't be evaluated
@@ -163,19 +375,11 @@ public class LeafNode<T> extends BlockNode implements TreeNode<T>{
 
         /* Write your code here */
         int numKeys = this.getNumKeys();
-        int offset = 8;
-        for(int i=0; i < numKeys; i++){
-            byte[] keyLengthBytes = this.get_data(offset+2, 2);
-            int keyLength = (keyLengthBytes[0] << 8) | (keyLengthBytes[1] & 0xFF);
-            T currentKey = this.convertBytesToT(this.get_data(offset + 4, keyLength), typeClass);
-            if (this.compare(key, currentKey) <= 0){
-                byte[] childBytes = this.get_data(offset, 2);
-                return (childBytes[0] << 8) | (childBytes[1] & 0xFF);
-            }else {
-                offset += keyLength + 4;
-            }
+        int i = this.lowerBound(key);
+        if(i == numKeys){
+            return -1;
         }
-        return -1;
+        return this.getBlockId(i);
     }
 
 }
@@ -0,0 +1,40 @@
+package index.bplusTree;
+
+/*
+    * B+ tree over VARCHAR keys
+    * Same as BPlusTreeIndexFile, but the key that goes up when a leaf splits is cut down to the
+    * shortest prefix of the first key on the right that is still above the last key on the left
+    * ("smith" | "smythe" sends up "smy"). Internal nodes then hold short keys whatever the length
+    * of the values, and together with the prefix compression of the nodes a larger order fits a block
+
+    * The separators are no longer keys of the table, so return_bfs lists the shortened ones
+ */
+public class StringBPlusTreeIndexFile extends BPlusTreeIndexFile<String> {
+
+    public StringBPlusTreeIndexFile(int order) {
+        super(order, String.class);
+    }
+
+    public StringBPlusTreeIndexFile(int order, boolean blink) {
+        super(order, String.class, blink);
+    }
+
+    // right itself when the two are equal, copies of a key can sit on both sides of a split
+    @Override
+    String separator(String left, String right) {
+        int n = 0;
+        int limit = Math.min(left.length(), right.length());
+        while(n < limit && left.charAt(n) == right.charAt(n)){
+            n++;
+        }
+        if(n == right.length()){
+            return right;
+        }
+        // the first character that differs, never half of a surrogate pair
+        int end = n + 1;
+        if(Character.isHighSurrogate(right.charAt(n)) && end < right.length()){
+            end++;
+        }
+        return right.substring(0, end);
+    }
+}
@@ -1,5 +1,6 @@
 package index.bplusTree;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 
 // TreeNode interface - will be implemented by InternalNode and LeafNode
@@ -30,7 +31,7 @@ public interface TreeNode <T> {
     
     default public byte[] convertTToBytes(T key) {
         if (key instanceof String) {
-            return ((String) key).getBytes();
+            return ((String) key).getBytes(StandardCharsets.UTF_8);
         } else if (key instanceof Boolean) {
             return new byte[] { (byte) (((Boolean) key) ? 1 : 0) };
         } else if (key instanceof Byte) {
@@ -70,7 +71,7 @@ public interface TreeNode <T> {
         if (typeClass.equals(Integer.class)) {
             return (T) Integer.valueOf(ByteBuffer.wrap(bytes).getInt());
         } else if (typeClass.equals(String.class)) {
-            return (T) new String(bytes);
+            return (T) new String(bytes, StandardCharsets.UTF_8);
         } else if (typeClass.equals(Double.class)) {
             return (T) Double.valueOf(ByteBuffer.wrap(bytes).getDouble());
         } else if (typeClass.equals(Date.class)) {
@@ -0,0 +1,310 @@
+package manager;
+
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeField;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    * A batch of rows stored column by column
+    * Each vector is a primitive array of its column type - int[] for INTEGER, float[] for FLOAT,
+    * double[] for DOUBLE, boolean[] for BOOLEAN and String[] for VARCHAR - with a parallel null flag array
+    * A column of another SQL type (type -1), such as the result of an aggregate, keeps its boxed values in an Object[]
+
+    * The selection vector lists the rows still part of the batch, in increasing order
+    * Filters shrink it instead of moving data, the vectors are never compacted
+ */
+public class ColumnBatch {
+
+    private final int[] types;
+    private final Object[] vectors;
+    private final boolean[][] nulls;
+    private int capacity;
+    private int size;
+
+    private int[] selection;
+    private int selected;
+
+    // types are ColumnType ordinals, one per vector
+    public ColumnBatch(int[] types, int capacity) {
+        this.types = types;
+        this.vectors = new Object[types.length];
+        this.nulls = new boolean[types.length][];
+        allocate(capacity);
+    }
+
+    // batch over the fields of a row type, for the rows of an operator that does not decode into batches
+    public static ColumnBatch of(RelDataType row_type, int capacity) {
+        List<RelDataTypeField> fields = row_type.getFieldList();
+        int[] types = new int[fields.size()];
+        for(int v = 0; v < types.length; v++){
+            types[v] = RecordEncoder.column_type(fields.get(v).getType());
+        }
+        return new ColumnBatch(types, capacity);
+    }
+
+    private ColumnBatch(int[] types, Object[] vectors, boolean[][] nulls, int capacity, int size, int[] selection, int selected) {
+        this.types = types;
+        this.vectors = vectors;
+        this.nulls = nulls;
+        this.capacity = capacity;
+        this.size = size;
+        this.selection = selection;
+        this.selected = selected;
+    }
+
+    private void allocate(int capacity) {
+        this.capacity = capacity;
+        for(int v = 0; v < types.length; v++){
+            if(types[v] == StorageManager.ColumnType.INTEGER.ordinal()){
+                vectors[v] = new int[capacity];
+            } else if(types[v] == StorageManager.ColumnType.FLOAT.ordinal()){
+                vectors[v] = new float[capacity];
+            } else if(types[v] == StorageManager.ColumnType.DOUBLE.ordinal()){
+                vectors[v] = new double[capacity];
+            } else if(types[v] == StorageManager.ColumnType.BOOLEAN.ordinal()){
+                vectors[v] = new boolean[capacity];
+            } else if(types[v] == StorageManager.ColumnType.VARCHAR.ordinal()){
+                vectors[v] = new String[capacity];
+            } else {
+                vectors[v] = new Object[capacity];
+            }
+            nulls[v] = new boolean[capacity];
+        }
+        selection = new int[capacity];
+    }
+
+    // empties the batch so that it can hold size rows, the vectors are reused when large enough
+    public void reset(int size) {
+        if(size > capacity){
+            allocate(size);
+        }
+        this.size = size;
+        for(int i = 0; i < size; i++){
+            selection[i] = i;
+        }
+        this.selected = size;
+    }
+
+    public int get_num_vectors() {
+        return types.length;
+    }
+
+    public int get_type(int vector) {
+        return types[vector];
+    }
+
+    // number of rows in the vectors, selected or not
+    public int get_size() {
+        return size;
+    }
+
+    public int get_num_selected() {
+        return selected;
+    }
+
+    // row ids of the selected rows, only the first get_num_selected() entries are valid
+    public int[] get_selection() {
+        return selection;
+    }
+
+    public int[] get_ints(int vector) {
+        return (int[]) vectors[vector];
+    }
+
+    public float[] get_floats(int vector) {
+        return (float[]) vectors[vector];
+    }
+
+    public double[] get_doubles(int vector) {
+        return (double[]) vectors[vector];
+    }
+
+    public boolean[] get_booleans(int vector) {
+        return (boolean[]) vectors[vector];
+    }
+
+    public String[] get_strings(int vector) {
+        return (String[]) vectors[vector];
+    }
+
+    public boolean[] get_nulls(int vector) {
+        return nulls[vector];
+    }
+
+    // boxed value of a row, null for null fields
+    public Object get(int vector, int row) {
+        if(nulls[vector][row]){
+            return null;
+        }
+        Object values = vectors[vector];
+        if(values instanceof int[]){
+            return ((int[]) values)[row];
+        } else if(values instanceof float[]){
+            return ((float[]) values)[row];
+        } else if(values instanceof double[]){
+            return ((double[]) values)[row];
+        } else if(values instanceof boolean[]){
+            return ((boolean[]) values)[row];
+        }
+        return ((Object[]) values)[row];
+    }
+
+    private static boolean matches(String op, int cmp) {
+        switch (op) {
+            case ">":
+                return cmp > 0;
+            case "<":
+                return cmp < 0;
+            case ">=":
+                return cmp >= 0;
+            case "<=":
+                return cmp <= 0;
+            case "=":
+                return cmp == 0;
+            case "<>":
+                return cmp != 0;
+            default:
+                return false;
+        }
+    }
+
+    /*
+        * Keeps the selected rows whose value in vector satisfies "value op key", null values never do
+        * op is one of > < >= <= = <>, key has the boxed type of the vector
+        * Numeric vectors are compared in a primitive loop
+    */
+    public void select(int vector, String op, Object key) {
+        int[] sel = selection;
+        boolean[] isNull = nulls[vector];
+        Object values = vectors[vector];
+        int kept = 0;
+        if(values instanceof int[] && key instanceof Integer){
+            int[] v = (int[]) values;
+            int k = (Integer) key;
+            for(int i = 0; i < selected; i++){
+                int row = sel[i];
+                if(!isNull[row] && matches(op, Integer.compare(v[row], k))){
+                    sel[kept++] = row;
+                }
+            }
+        } else if(values instanceof double[] && key instanceof Double){
+            double[] v = (double[]) values;
+            double k = (Double) key;
+            for(int i = 0; i < selected; i++){
+                int row = sel[i];
+                if(!isNull[row] && matches(op, Double.compare(v[row], k))){
+                    sel[kept++] = row;
+                }
+            }
+        } else if(values instanceof float[] && key instanceof Float){
+            float[] v = (float[]) values;
+            float k = (Float) key;
+            for(int i = 0; i < selected; i++){
+                int row = sel[i];
+                if(!isNull[row] && matches(op, Float.compare(v[row], k))){
+                    sel[kept++] = row;
+                }
+            }
+        } else {
+            for(int i = 0; i < selected; i++){
+                int row = sel[i];
+                if(!isNull[row] && matches(op, compare(get(vector, row), key))){
+                    sel[kept++] = row;
+                }
+            }
+        }
+        selected = kept;
+    }
+
+    private static int compare(Object value, Object key) {
+        if (value instanceof Comparable && key instanceof Comparable) {
+            try {
+                return ((Comparable<Object>) value).compareTo(key);
+            } catch (ClassCastException e) {
+                return value.toString().compareTo(key.toString());
+            }
+        }
+        return value.toString().compareTo(key.toString());
+    }
+
+    // batch over some of the vectors of this one, in the given order, sharing vectors and selection
+    public ColumnBatch project(int[] vector_ids) {
+        int[] projected_types = new int[vector_ids.length];
+        Object[] projected_vectors = new Object[vector_ids.length];
+        boolean[][] projected_nulls = new boolean[vector_ids.length][];
+        for(int i = 0; i < vector_ids.length; i++){
+            projected_types[i] = types[vector_ids[i]];
+            projected_vectors[i] = vectors[vector_ids[i]];
+            projected_nulls[i] = nulls[vector_ids[i]];
+        }
+        return new ColumnBatch(projected_types, projected_vectors, projected_nulls, capacity, size, selection, selected);
+    }
+
+    // boxes the selected rows, for consumers that work row by row
+    public List<Object[]> to_rows() {
+        List<Object[]> rows = new ArrayList<>(selected);
+        for(int i = 0; i < selected; i++){
+            Object[] row = new Object[types.length];
+            for(int v = 0; v < types.length; v++){
+                row[v] = get(v, selection[i]);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    // writers used while filling the batch
+    public void set_null(int vector, int row) {
+        nulls[vector][row] = true;
+    }
+
+    public void set_int(int vector, int row, int value) {
+        ((int[]) vectors[vector])[row] = value;
+        nulls[vector][row] = false;
+    }
+
+    public void set_float(int vector, int row, float value) {
+        ((float[]) vectors[vector])[row] = value;
+        nulls[vector][row] = false;
+    }
+
+    public void set_double(int vector, int row, double value) {
+        ((double[]) vectors[vector])[row] = value;
+        nulls[vector][row] = false;
+    }
+
+    public void set_boolean(int vector, int row, boolean value) {
+        ((boolean[]) vectors[vector])[row] = value;
+        nulls[vector][row] = false;
+    }
+
+    public void set_string(int vector, int row, String value) {
+        ((String[]) vectors[vector])[row] = value;
+        nulls[vector][row] = false;
+    }
+
+    // writes a boxed value, numbers are narrowed to the type of a numeric vector
+    public void set(int vector, int row, Object value) {
+        if(value == null){
+            set_null(vector, row);
+            return;
+        }
+        Object values = vectors[vector];
+        if(values instanceof int[]){
+            set_int(vector, row, ((Number) value).intValue());
+        } else if(values instanceof float[]){
+            set_float(vector, row, ((Number) value).floatValue());
+        } else if(values instanceof double[]){
+            set_double(vector, row, ((Number) value).doubleValue());
+        } else if(values instanceof boolean[]){
+            set_boolean(vector, row, (Boolean) value);
+        } else if(values instanceof String[]){
+            set_string(vector, row, value.toString());
+        } else {
+            ((Object[]) values)[row] = value;
+            nulls[vector][row] = false;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package manager;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.calcite.rel.type.RelDataType;
+
+/*
+    * Encodes rows of one table into the record format described in TableSchema
+    * The layout - type of each column, offset of each fixed field, bitmap size - is worked out
+    * once from the type list, encode then writes fields straight into the output buffer
+
+    * An encoder keeps no state between calls and can be shared by threads
+ */
+public class RecordEncoder {
+
+    // ColumnType ordinal of each column in row order, -1 for unsupported types
+    private final int[] types;
+
+    // row positions of the fixed and the variable length columns, each in row order
+    private final int[] fixed_columns;
+    private final int[] var_columns;
+
+    // offset of each fixed column (row position) from the start of the fixed fields
+    private final int[] fixed_offsets;
+    private final int fixed_length;
+    private final int bitmap_length;
+    // SQL type of each column when built from the row type, for the error on an unsupported one
+    private String[] type_names;
+
+    public RecordEncoder(List<RelDataType> typeList) {
+        this(column_types(typeList));
+        type_names = new String[typeList.size()];
+        for(int i = 0; i < type_names.length; i++){
+            type_names[i] = typeList.get(i).getSqlTypeName().getName();
+        }
+    }
+
+    // types are ColumnType ordinals, one per column of the rows to encode
+    // the record does not depend on where the varchars are in the row, so rows in the storage
+    // order of a TableSchema can be encoded with the types of the schema
+    public RecordEncoder(int[] column_types) {
+        int num_columns = column_types.length;
+        types = column_types.clone();
+        fixed_offsets = new int[num_columns];
+        int num_fixed = 0;
+        for(int i = 0; i < num_columns; i++){
+            if(types[i] != StorageManager.ColumnType.VARCHAR.ordinal()){
+                num_fixed++;
+            }
+        }
+        fixed_columns = new int[num_fixed];
+        var_columns = new int[num_columns - num_fixed];
+        int fixed = 0, var = 0, offset = 0;
+        for(int i = 0; i < num_columns; i++){
+            if(types[i] == StorageManager.ColumnType.VARCHAR.ordinal()){
+                var_columns[var++] = i;
+            } else {
+                fixed_columns[fixed++] = i;
+                fixed_offsets[i] = offset;
+                offset += field_length(types[i]);
+            }
+        }
+        fixed_length = offset;
+        bitmap_length = (num_columns + 7) / 8;
+    }
+
+    private static int[] column_types(List<RelDataType> typeList) {
+        int[] types = new int[typeList.size()];
+        for(int i = 0; i < types.length; i++){
+            types[i] = column_type(typeList.get(i));
+        }
+        return types;
+    }
+
+    // ColumnType ordinal of a SQL type, -1 if records can not store it
+    static int column_type(RelDataType type) {
+        switch (type.getSqlTypeName()) {
+            case VARCHAR:
+                return StorageManager.ColumnType.VARCHAR.ordinal();
+            case INTEGER:
+                return StorageManager.ColumnType.INTEGER.ordinal();
+            case BOOLEAN:
+                return StorageManager.ColumnType.BOOLEAN.ordinal();
+            case FLOAT:
+                return StorageManager.ColumnType.FLOAT.ordinal();
+            case DOUBLE:
+                return StorageManager.ColumnType.DOUBLE.ordinal();
+            default:
+                return -1;
+        }
+    }
+
+    private static int field_length(int type) {
+        if(type == StorageManager.ColumnType.INTEGER.ordinal() || type == StorageManager.ColumnType.FLOAT.ordinal()){
+            return 4;
+        } else if(type == StorageManager.ColumnType.DOUBLE.ordinal()){
+            return 8;
+        } else if(type == StorageManager.ColumnType.BOOLEAN.ordinal()){
+            return 1;
+        }
+        // unsupported types take no room, encode rejects them
+        return 0;
+    }
+
+    // encodes row into a new array of exactly the record length
+    public byte[] encode(Object[] row) {
+        byte[][] strings = new byte[var_columns.length][];
+        byte[] record = new byte[record_length(row, strings)];
+        write(row, strings, ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN), 0);
+        return record;
+    }
+
+    /*
+        * Encodes row at the position of out and moves the position past the record
+        * Returns the record length, or -1 without writing anything if out has too little room left
+    */
+    public int encode(Object[] row, ByteBuffer out) {
+        byte[][] strings = new byte[var_columns.length][];
+        int length = record_length(row, strings);
+        if(length > out.remaining()){
+            return -1;
+        }
+        ByteBuffer record = out.order() == ByteOrder.LITTLE_ENDIAN ? out : out.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        write(row, strings, record, out.position());
+        out.position(out.position() + length);
+        return length;
+    }
+
+    // length of the encoded row, also fills strings with the bytes of its non null varchars
+    private int record_length(Object[] row, byte[][] strings) {
+        for(int column : fixed_columns){
+            if(types[column] == -1){
+                String type = type_names == null ? "of column " + column : type_names[column];
+                throw new RuntimeException("Unsupported type " + type);
+            }
+        }
+        int length = fixed_length + bitmap_length;
+        for(int v = 0; v < var_columns.length; v++){
+            Object value = row[var_columns[v]];
+            if(value == null){
+                // a null varchar keeps a single placeholder byte
+                length += 1;
+            } else {
+                strings[v] = ((String) value).getBytes(StandardCharsets.UTF_8);
+                length += 4 + strings[v].length;
+            }
+        }
+        return length;
+    }
+
+    private void write(Object[] row, byte[][] strings, ByteBuffer out, int start) {
+        int num_entries = 0;
+        for(byte[] string : strings){
+            if(string != null){
+                num_entries++;
+            }
+        }
+        int fixed = start + 4 * num_entries;
+        int bitmap = fixed + fixed_length;
+        for(int b = 0; b < bitmap_length; b++){
+            out.put(bitmap + b, (byte) 0);
+        }
+
+        // the bitmap has the fixed columns first and the varchars after them
+        int bit = 0;
+        for(int column : fixed_columns){
+            int offset = fixed + fixed_offsets[column];
+            Object value = row[column];
+            int type = types[column];
+            if(value == null){
+                set_null(out, bitmap, bit);
+                for(int j = 0; j < field_length(type); j++){
+                    out.put(offset + j, (byte) 0);
+                }
+            } else if(type == StorageManager.ColumnType.INTEGER.ordinal()){
+                out.putInt(offset, (int) value);
+            } else if(type == StorageManager.ColumnType.FLOAT.ordinal()){
+                out.putFloat(offset, (float) value);
+            } else if(type == StorageManager.ColumnType.DOUBLE.ordinal()){
+                out.putDouble(offset, (double) value);
+            } else {
+                out.put(offset, (byte) ((boolean) value ? 1 : 0));
+            }
+            bit++;
+        }
+
+        // entry offsets count from the record start and skip the placeholders of null varchars
+        int data = bitmap + bitmap_length;
+        int var_offset = data - start;
+        int entry = 0;
+        for(int v = 0; v < var_columns.length; v++){
+            byte[] string = strings[v];
+            if(string == null){
+                set_null(out, bitmap, bit++);
+                out.put(data++, (byte) 0);
+                continue;
+            }
+            out.putShort(start + 4 * entry, (short) var_offset);
+            out.putShort(start + 4 * entry + 2, (short) string.length);
+            for(int j = 0; j < string.length; j++){
+                out.put(data + j, string[j]);
+            }
+            data += string.length;
+            var_offset += string.length;
+            entry++;
+            bit++;
+        }
+    }
+
+    private static void set_null(ByteBuffer out, int bitmap, int bit) {
+        int index = bitmap + bit / 8;
+        out.put(index, (byte) (out.get(index) | (1 << (7 - bit % 8))));
+    }
+}
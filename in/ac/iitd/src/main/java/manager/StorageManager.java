@@ -3,12 +3,30 @@ package manager;
 import storage.DB;
 import storage.File;
 import storage.Block;
+import storage.BufferPool;
+import storage.PageFile;
 import Utils.CsvRowConverter;
+import au.com.bytecode.opencsv.CSVParser;
 import index.bplusTree.BPlusTreeIndexFile;
+import index.bplusTree.DoubleBPlusTreeIndexFile;
+import index.bplusTree.IndexCursor;
+import index.bplusTree.IntBPlusTreeIndexFile;
+import index.bplusTree.StringBPlusTreeIndexFile;
 
-import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
@@ -23,8 +41,10 @@ import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 import java.util.Iterator;
+import java.util.function.Predicate;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import javafx.util.Pair;
 import java.util.Arrays;
 import java.nio.charset.StandardCharsets;
@@ -34,7 +54,17 @@ public class StorageManager {
 
     private HashMap<String, Integer> file_to_fileid;
     private DB db;
-    private BPlusTreeIndexFile indexFile;
+
+    // index catalog, one tree per indexed (table, column) under the name from index_name
+    // the trees are also files of the db, file_to_fileid maps the same names to their file ids
+    private HashMap<String, BPlusTreeIndexFile<?>> indexes;
+
+    // decoded schema block of each table, see TableSchema
+    private HashMap<String, TableSchema> schemas;
+
+    // set when tables are stored on disk instead of in memory
+    private String data_dir;
+    private BufferPool buffer_pool;
 
     enum ColumnType {
         VARCHAR, INTEGER, BOOLEAN, FLOAT, DOUBLE
@@ -43,6 +73,22 @@ public class StorageManager {
     public StorageManager() {
         file_to_fileid = new HashMap<>();
         db = new DB();
+        schemas = new HashMap<>();
+        indexes = new HashMap<>();
+    }
+
+    // tables are kept as page files in data_dir and cached in a pool of buffer_frames blocks
+    // a table completely loaded into data_dir before is reopened instead of being loaded from the CSV again
+    public StorageManager(String data_dir, int buffer_frames) {
+        this();
+        this.data_dir = data_dir;
+        this.buffer_pool = new BufferPool(buffer_frames);
+        new java.io.File(data_dir).mkdirs();
+    }
+
+    // flushes disk backed tables, the StorageManager should not be used afterwards
+    public void close() {
+        db.close();
     }
 
     // loads CSV files into DB362
@@ -58,20 +104,42 @@ public class StorageManager {
 
         // check if file already exists
         assert(file_to_fileid.get(table_name) == null);
+        invalidate_schema(table_name);
 
-        File f = new File();
+        File f;
+        try{
+            if(buffer_pool != null) {
+                String path = data_dir + "/" + table_name + ".db";
+                f = new File(new PageFile(path), buffer_pool);
+                if(f.is_loaded()) {
+                    // table survived a restart
+                    int counter = db.addFile(f);
+                    file_to_fileid.put(table_name, counter);
+                    get_schema(table_name);
+                    return;
+                }
+                if(f.get_num_blocks() > 0) {
+                    // an earlier load stopped part way, the table is built again from the CSV
+                    f.close();
+                    Files.delete(Paths.get(path));
+                    f = new File(new PageFile(path), buffer_pool);
+                }
+            } else {
+                f = new File();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
         try{
             csvFile = getFsPath() + "/" + csvFile;
-            BufferedReader br = new BufferedReader(new FileReader(csvFile));
-            String line = "";
-            int lineNum = 0;
-
-            while ((line = br.readLine()) != null) {
-
+            try(FileChannel channel = FileChannel.open(Paths.get(csvFile), StandardOpenOption.READ)){
                 // csv header line
-                if(lineNum == 0){
+                long headerEnd = lineEnd(channel, 0);
+                if(channel.size() > 0){
 
-                    String[] columnNames = CsvRowConverter.parseLine(line);
+                    byte[] header = readRange(channel, 0, headerEnd);
+                    String[] columnNames = CsvRowConverter.parseLine(lineAt(header, 0, header.length));
                     List<String> columnNamesList = new ArrayList<>();
                     for(String columnName : columnNames) {
                         // if columnName contains ":", then take part before ":"
@@ -84,204 +152,207 @@ public class StorageManager {
 
                     Block schemaBlock = createSchemaBlock(columnNamesList, typeList);
                     f.add_block(schemaBlock);
-                    lineNum++;
-                    continue;
                 }
 
-                String[] parsedLine = CsvRowConverter.parseLine(line);
-                Object[] row = new Object[parsedLine.length];
-
-                for(int i = 0; i < parsedLine.length; i++) {
-                    row[i] = CsvRowConverter.convert(typeList.get(i), parsedLine[i]);
-                }
-
-                // convert row to byte array
-                byte[] record = convertToByteArray(row, typeList);
-
-                boolean added = f.add_record_to_last_block(record);
-                if(!added) {
-                    f.add_record_to_new_block(record);
-                }
-                lineNum++;
+                // chunks are encoded in parallel, their records are appended in file order
+                // so the pages come out exactly as a sequential load would write them
+                RecordEncoder encoder = new RecordEncoder(typeList);
+                appendChunks(f, channel, headerEnd + 1, encoder, typeList);
             }
+            f.flush();
+            f.mark_loaded();
         } catch (IOException e) {
             e.printStackTrace();
+            // the table is left out, a page file it got part way through is built again by the next load
+            f.close();
+            return;
         } catch (ParseException e) {
             e.printStackTrace();
+            f.close();
+            return;
         }
 
         // System.out.println("Done writing file\n");
         int counter = db.addFile(f);
         file_to_fileid.put(table_name, counter);
+        get_schema(table_name);
         return;
     }
 
-    // converts a row to byte array to write to relational file
-    private byte[] convertToByteArray(Object[] row, List<RelDataType> typeList) {
+    // schema of the table, decoded from its schema block on first use
+    public TableSchema get_schema(String table_name) {
+        TableSchema schema = schemas.get(table_name);
+        if(schema == null){
+            if(file_to_fileid.get(table_name) == null){
+                return null;
+            }
+            schema = new TableSchema(get_data_block(table_name, 0));
+            schemas.put(table_name, schema);
+        }
+        return schema;
+    }
 
-        List<Byte> fixed_length_Bytes = new ArrayList<>();
-        List<Byte> variable_length_Bytes = new ArrayList<>();
-        List<Integer> variable_length = new ArrayList<>();
-        List<Boolean> fixed_length_nullBitmap = new ArrayList<>();
-        List<Boolean> variable_length_nullBitmap = new ArrayList<>();
+    // has to be called whenever the schema block of a table changes
+    public void invalidate_schema(String table_name) {
+        schemas.remove(table_name);
+    }
 
-        for(int i = 0; i < row.length; i++) {
+    // chunks smaller than this are parsed by the loading thread itself
+    private static final int MIN_CHUNK_BYTES = 1 << 16;
+    // larger files are cut into more chunks than workers, so a chunk stays this small
+    private static final int MAX_CHUNK_BYTES = 1 << 22;
+    // encoded chunks waiting to be appended, per worker
+    private static final int CHUNKS_PER_WORKER = 2;
+
+    // index of the '\n' ending the line starting at start, contents.length for the last line
+    private static int lineEnd(byte[] contents, int start) {
+        int i = start;
+        while(i < contents.length && contents[i] != '\n'){
+            i++;
+        }
+        return i;
+    }
 
-            if(typeList.get(i).getSqlTypeName().getName().equals("INTEGER")) {
-                if(row[i] == null){
-                    fixed_length_nullBitmap.add(true);
-                    for(int j = 0; j < 4; j++) {
-                        fixed_length_Bytes.add((byte) 0);
-                    }
-                } else {
-                    fixed_length_nullBitmap.add(false);
-                    int val = (int) row[i];
-                    byte[] intBytes = new byte[4];
-                    intBytes[0] = (byte) (val & 0xFF);
-                    intBytes[1] = (byte) ((val >> 8) & 0xFF);
-                    intBytes[2] = (byte) ((val >> 16) & 0xFF);
-                    intBytes[3] = (byte) ((val >> 24) & 0xFF);
-                    for(int j = 0; j < 4; j++) {
-                        fixed_length_Bytes.add(intBytes[j]);
-                    }
-                }
-            } else if(typeList.get(i).getSqlTypeName().getName().equals("VARCHAR")) {
-                if(row[i] == null){
-                    variable_length_nullBitmap.add(true);
-                    for(int j = 0; j < 1; j++) {
-                        variable_length_Bytes.add((byte) 0);
-                    }
-                } else {
-                    variable_length_nullBitmap.add(false);
-                    String val = (String) row[i];
-                    
-                    byte[] strBytes = val.getBytes();
-                    for(int j = 0; j < strBytes.length; j++) {
-                        variable_length_Bytes.add(strBytes[j]);
-                    }
-                    variable_length.add(strBytes.length);
-                }
-            } else if (typeList.get(i).getSqlTypeName().getName().equals("BOOLEAN")) {         
-                if(row[i] == null){
-                    fixed_length_nullBitmap.add(true);
-                    fixed_length_Bytes.add((byte) 0);
-                } else {
-                    fixed_length_nullBitmap.add(false);
-                    boolean val = (boolean) row[i];
-                    fixed_length_Bytes.add((byte) (val ? 1 : 0));
-                }
-            } else if (typeList.get(i).getSqlTypeName().getName().equals("FLOAT")) {
-                
-                if(row[i] == null){
-                    fixed_length_nullBitmap.add(true);
-                    for(int j = 0; j < 4; j++) {
-                        fixed_length_Bytes.add((byte) 0);
-                    }
-                } else {
-                    fixed_length_nullBitmap.add(false);
-                    float val = (float) row[i];
-                    byte[] floatBytes = new byte[4];
-                    int intBits = Float.floatToIntBits(val);
-                    floatBytes[0] = (byte) (intBits & 0xFF);
-                    floatBytes[1] = (byte) ((intBits >> 8) & 0xFF);
-                    floatBytes[2] = (byte) ((intBits >> 16) & 0xFF);
-                    floatBytes[3] = (byte) ((intBits >> 24) & 0xFF);
-                    for(int j = 0; j < 4; j++) {
-                        fixed_length_Bytes.add(floatBytes[j]);
-                    }
-                }
-            } else if (typeList.get(i).getSqlTypeName().getName().equals("DOUBLE")) {
-                
-                if(row[i] == null){
-                    fixed_length_nullBitmap.add(true);
-                    for(int j = 0; j < 8; j++) {
-                        fixed_length_Bytes.add((byte) 0);
-                    }
-                } else {
-                    fixed_length_nullBitmap.add(false);
-                    double val = (double) row[i];
-                    byte[] doubleBytes = new byte[8];
-                    long longBits = Double.doubleToLongBits(val);
-                    doubleBytes[0] = (byte) (longBits & 0xFF);
-                    doubleBytes[1] = (byte) ((longBits >> 8) & 0xFF);
-                    doubleBytes[2] = (byte) ((longBits >> 16) & 0xFF);
-                    doubleBytes[3] = (byte) ((longBits >> 24) & 0xFF);
-                    doubleBytes[4] = (byte) ((longBits >> 32) & 0xFF);
-                    doubleBytes[5] = (byte) ((longBits >> 40) & 0xFF);
-                    doubleBytes[6] = (byte) ((longBits >> 48) & 0xFF);
-                    doubleBytes[7] = (byte) ((longBits >> 56) & 0xFF);
-                    for(int j = 0; j < 8; j++) {
-                        fixed_length_Bytes.add(doubleBytes[j]);
-                    }
+    // position of the first '\n' at or after start in the channel, its size for the last line
+    private static long lineEnd(FileChannel channel, long start) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long size = channel.size();
+        long position = start;
+        while(position < size){
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if(read <= 0){
+                break;
+            }
+            for(int i = 0; i < read; i++){
+                if(buffer.get(i) == '\n'){
+                    return position + i;
                 }
-            } else {
-                System.out.println("Unsupported type");
-                throw new RuntimeException("Unsupported type");
             }
+            position += read;
         }
+        return size;
+    }
 
-        short num_bytes_for_bitmap = (short) ((fixed_length_nullBitmap.size() + variable_length_nullBitmap.size() + 7) / 8); // should be in multiples of bytes
-
-        //                       bytes for fixed length and variable length fields          offset & length of var fields
-        byte[] result = new byte[fixed_length_Bytes.size() + variable_length_Bytes.size() + 4 * variable_length.size() + num_bytes_for_bitmap];
-        int variable_length_offset = 4 * variable_length.size() + 
-        
-        fixed_length_Bytes.size() + num_bytes_for_bitmap;
-
-        int idx = 0;
-        for(; idx < variable_length.size() ; idx ++){
-            // first 2 bytes should be offset
-            result[idx * 4] = (byte) (variable_length_offset & 0xFF);
-            result[idx * 4 + 1] = (byte) ((variable_length_offset >> 8) & 0xFF);
-
-            // next 2 bytes should be length
-            result[idx * 4 + 2] = (byte) (variable_length.get(idx) & 0xFF);
-            result[idx * 4 + 3] = (byte) ((variable_length.get(idx) >> 8) & 0xFF);
-
-            variable_length_offset += variable_length.get(idx);
+    // bytes [start, end) of the channel, positional reads so workers can share the channel
+    private static byte[] readRange(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while(buffer.hasRemaining()){
+            if(channel.read(buffer, start + buffer.position()) < 0){
+                throw new EOFException("CSV file ended at " + (start + buffer.position()) + ", expected " + end + " bytes");
+            }
         }
+        return buffer.array();
+    }
 
-        idx = idx * 4;
+    // line in contents[start, end) without its '\r' if it had a "\r\n" ending
+    private static String lineAt(byte[] contents, int start, int end) {
+        if(end > start && contents[end - 1] == '\r'){
+            end--;
+        }
+        return new String(contents, start, end - start);
+    }
 
-        // write fixed length fields
-        for(int i = 0; i < fixed_length_Bytes.size(); i++, idx++) {
-            result[idx] = fixed_length_Bytes.get(i);
+    /*
+        * Splits the channel from start on into byte ranges ending at line boundaries and encodes the records
+        * of each range on a worker pool, each worker reading its own range from the channel
+        * The records of a range are appended to f as soon as it and all ranges before it are encoded
+        * At most CHUNKS_PER_WORKER ranges per worker are read but not yet appended, so memory does not grow with the file
+        * Each worker parses with its own CSVParser, the shared one in CsvRowConverter is not thread safe
+    */
+    private void appendChunks(File f, FileChannel channel, long start, RecordEncoder encoder, List<RelDataType> typeList) throws IOException {
+        long size = channel.size();
+        if(start >= size){
+            return;
+        }
+        int workers = Runtime.getRuntime().availableProcessors();
+        long chunkSize = Math.min(MAX_CHUNK_BYTES, Math.max(MIN_CHUNK_BYTES, (size - start) / workers + 1));
+        if(size - start <= chunkSize){
+            byte[] contents = readRange(channel, start, size);
+            appendChunk(f, encodeChunk(contents, 0, contents.length, encoder, typeList));
+            return;
         }
 
-        // write null bitmap
-        int bitmap_idx = 0;
-        for(int i = 0; i < fixed_length_nullBitmap.size(); i++) {
-            if(fixed_length_nullBitmap.get(i)) {
-                result[idx] |= (1 << (7 - bitmap_idx));
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try{
+            ArrayDeque<Future<EncodedChunk>> pending = new ArrayDeque<>();
+            long position = start;
+            while(position < size || !pending.isEmpty()){
+                while(position < size && pending.size() < CHUNKS_PER_WORKER * workers){
+                    long chunkStart = position;
+                    long chunkEnd = Math.min(lineEnd(channel, Math.min(position + chunkSize, size - 1)) + 1, size);
+                    pending.add(pool.submit(() -> {
+                        byte[] contents = readRange(channel, chunkStart, chunkEnd);
+                        return encodeChunk(contents, 0, contents.length, encoder, typeList);
+                    }));
+                    position = chunkEnd;
+                }
+                appendChunk(f, pending.poll().get());
             }
-            bitmap_idx++;
-            if(bitmap_idx == 8) {
-                bitmap_idx = 0;
-                idx++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof IOException){
+                throw (IOException) e.getCause();
             }
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
         }
+    }
 
-        for(int i = 0; i < variable_length_nullBitmap.size(); i++) {
-            if(variable_length_nullBitmap.get(i)) {
-                result[idx] |= (1 << (7 - bitmap_idx));
-            }
-            bitmap_idx++;
-            if(bitmap_idx == 8) {
-                bitmap_idx = 0;
-                idx++;
+    // appends the records of a chunk in order, starting a new block whenever the last one is full
+    private static void appendChunk(File f, EncodedChunk chunk) {
+        byte[] records = chunk.records.array();
+        int start = 0;
+        for(int i = 0; i < chunk.num_records; i++){
+            int length = chunk.lengths[i];
+            boolean added = f.add_record_to_last_block(records, start, length);
+            if(!added) {
+                f.add_record_to_new_block(records, start, length);
             }
+            start += length;
         }
+    }
 
-        if(bitmap_idx != 0) {
-            idx++;
-        }
+    // records of a chunk encoded back to back, lengths[i] is the length of the i-th record
+    private static class EncodedChunk {
+        ByteBuffer records;
+        int[] lengths = new int[64];
+        int num_records;
+    }
 
-        // write variable length fields
-        for(int i = 0; i < variable_length_Bytes.size(); i++, idx++) {
-            result[idx] = variable_length_Bytes.get(i);
-        }
+    // parses and encodes the lines in contents[start, end)
+    // records go straight into one growing buffer, no array is allocated per record
+    private EncodedChunk encodeChunk(byte[] contents, int start, int end, RecordEncoder encoder, List<RelDataType> typeList) throws IOException {
+        CSVParser lineParser = CsvRowConverter.newParser();
+        EncodedChunk chunk = new EncodedChunk();
+        chunk.records = ByteBuffer.allocate(Math.max(end - start, 1024)).order(ByteOrder.LITTLE_ENDIAN);
+        int position = start;
+        while(position < end){
+            int lineEnd = Math.min(lineEnd(contents, position), end);
+            String[] parsedLine = CsvRowConverter.parseLine(lineParser, lineAt(contents, position, lineEnd));
+            Object[] row = new Object[parsedLine.length];
+
+            for(int i = 0; i < parsedLine.length; i++) {
+                row[i] = CsvRowConverter.convert(typeList.get(i), parsedLine[i]);
+            }
 
-        return result;
+            int length;
+            while((length = encoder.encode(row, chunk.records)) == -1){
+                ByteBuffer larger = ByteBuffer.allocate(2 * chunk.records.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+                chunk.records.flip();
+                larger.put(chunk.records);
+                chunk.records = larger;
+            }
+            if(chunk.num_records == chunk.lengths.length){
+                chunk.lengths = Arrays.copyOf(chunk.lengths, 2 * chunk.num_records);
+            }
+            chunk.lengths[chunk.num_records++] = length;
+            position = lineEnd + 1;
+        }
+        return chunk;
     }
 
     // helper function for loadFile
@@ -383,13 +454,51 @@ public class StorageManager {
         return db.get_data(file_id, block_id);
     }
 
+    // read only view of the block, fields are decoded from it in place
+    public ByteBuffer get_block_view(String table_name, int block_id){
+        int file_id = file_to_fileid.get(table_name);
+        return db.get_view(file_id, block_id);
+    }
+
+    // number of records of the table, read from its metadata block, -1 if there is no such table
+    public int get_num_records(String table_name) {
+        Integer file_id = file_to_fileid.get(table_name);
+        if(file_id == null){
+            return -1;
+        }
+        return db.get_num_records(file_id);
+    }
+
+    // number of data blocks of the table, -1 if there is no such table
+    public int get_num_data_blocks(String table_name) {
+        Integer file_id = file_to_fileid.get(table_name);
+        if(file_id == null){
+            return -1;
+        }
+        return db.get_num_data_blocks(file_id);
+    }
+
     public boolean check_file_exists(String table_name) {
         return file_to_fileid.get(table_name) != null;
     }
 
     public boolean check_index_exists(String table_name, String column_name) {
-        String index_file_name = table_name + "_" + column_name + "_index";
-        return file_to_fileid.get(index_file_name) != null;
+        return indexes.containsKey(index_name(table_name, column_name));
+    }
+
+    // name of the index on column_name of table_name in the catalog and in file_to_fileid
+    private static String index_name(String table_name, String column_name) {
+        return table_name + "_" + column_name + "_index";
+    }
+
+    // the index on column_name of table_name, null if there is none
+    public BPlusTreeIndexFile<?> get_index(String table_name, String column_name) {
+        return indexes.get(index_name(table_name, column_name));
+    }
+
+    // file id of the index on column_name of table_name, the index has to exist
+    private int index_file_id(String table_name, String column_name) {
+        return file_to_fileid.get(index_name(table_name, column_name));
     }
 
     public boolean getBit(byte b, int i) {
@@ -398,82 +507,9 @@ public class StorageManager {
         return ((b >> i) & 1) == 1;
     }
 
+    // typeList is not needed anymore, the cached schema of the table is used
     public Object[] convertToObjects(byte[] byteArray, List<Integer> typeList, String table_name) {
-        List<Object> objects = new ArrayList<>();
-        int offset = 0;
-        List<Object> variableobjects = new ArrayList<>();
-        List<Object> fixedObjects = new ArrayList<>();
-        // Iterate over each type in the type list
-        int i = 0;
-        for(i=0; i<typeList.size(); i++){
-            offset = ((byteArray[4 * i + 1] & 0xFF) << 8) | (byteArray[4 * i] & 0xFF);
-            int length = ((byteArray[4 * i + 3] & 0xFF) << 8) | (byteArray[4 * i + 2] & 0xFF);
-            
-            byte[] data = Arrays.copyOfRange(byteArray, offset, offset + length);
-            variableobjects.add(new String(data, StandardCharsets.UTF_8));
-            if(offset + length == byteArray.length || offset + length == byteArray.length - 1){
-                break;
-            }
-        }
-
-        // get the number of colums from the schema block
-        byte[] schemaBlock = get_data_block(table_name, 0);
-        int num_of_colums = ((schemaBlock[1] & 0xFF) << 8) | (schemaBlock[0] & 0xFF);
-        int num_of_fix_colums = (num_of_colums - i - 1);
-        int startOffsetOffix = 4 * i + 4;
-
-        // TODO: CONVER ACCRODING TO CORRECT SIZE OF THE BYTES
-        for(int j=0; j<num_of_colums; j++){
-            
-            if(typeList.get(j) == ColumnType.INTEGER.ordinal() || typeList.get(j) == ColumnType.FLOAT.ordinal()){
-                byte[] datai= Arrays.copyOfRange(byteArray, startOffsetOffix, startOffsetOffix + 4);
-                int val = ((datai[3] & 0xFF) << 24) |
-                    ((datai[2] & 0xFF) << 16) |
-                    ((datai[1] & 0xFF) << 8) |
-                    (datai[0] & 0xFF);
-                fixedObjects.add(val);
-                startOffsetOffix += 4;
-            }
-            else if(typeList.get(j) == ColumnType.BOOLEAN.ordinal()){
-                fixedObjects.add(byteArray[startOffsetOffix] != 0);
-                startOffsetOffix += 1;
-            }
-            else if(typeList.get(j) == ColumnType.DOUBLE.ordinal()){
-                byte[] datai = Arrays.copyOfRange(byteArray, startOffsetOffix, startOffsetOffix + 8);
-                long longBits = 0;
-                for (int b = 0; b < 8; b++) {
-                    longBits |= ((long) (datai[b] & 0xFF)) << (8 * b);
-                }
-
-                double val = Double.longBitsToDouble(longBits);
-                fixedObjects.add(val);
-                startOffsetOffix += 8;
-            }
-        }
-
-        // Object[] combinedArray = new Object[fixedObjects.size() + variableobjects.size()];
-        ArrayList<Object> combinedArray = new ArrayList<Object>();
-        // Copy elements from list1 to the combined array
-        int index = 0;
-        for (Object obj : fixedObjects) {
-            combinedArray.add(obj);
-        }
-
-        // Copy elements from list2 to the combined array
-        for (Object obj : variableobjects) {
-            combinedArray.add(obj);
-        }
-
-        int endIndexOfBitMap = (((byteArray[1] & 0xFF) << 8) | (byteArray[0] & 0xFF));
-        for(i=0; i<combinedArray.size(); i++) {
-            if(getBit(byteArray[startOffsetOffix], i%8)){
-                combinedArray.set(i, null);
-            }
-            if(i != 0 && (i + 1) % 8 == 0){
-                startOffsetOffix++;
-            }
-        }
-        return combinedArray.toArray();
+        return get_schema(table_name).decode(ByteBuffer.wrap(byteArray), 0, byteArray.length, new byte[byteArray.length]);
     }
 
     // public List<RelDataType> convertEnumIdsToRelDataType(List<Integer> enumIds) {
@@ -649,115 +685,353 @@ public class StorageManager {
         // return list of records otherwise
         // int file_id = file_to_fileid.get(table_name);
         // System.out.println("get records from block exists");
-        byte[] data = get_data_block(table_name, block_id);
-        if(file_to_fileid.get(table_name) == null || data == null){
+        if(file_to_fileid.get(table_name) == null){
+            return null;
+        }
+        ByteBuffer data = get_block_view(table_name, block_id);
+        if(data == null){
             return null;
         }
 
         List<Object[]> records = new ArrayList<Object[]>();
-        int numRecords = ((data[0] & 0xFF ) << 8) | (data[1] & 0xFF);
-        int offsetIndex = 2;
-        int previousStartOffset = data.length;
-        byte[] schemaBlock = get_data_block(table_name, 0); // schema block
-        List<Integer> enumValues = readEnumtypes(schemaBlock);
-        
+        // page header is big endian
+        int numRecords = data.getShort(0) & 0xFFFF;
+        int previousStartOffset = data.capacity();
+        TableSchema schema = get_schema(table_name);
+        byte[] scratch = new byte[data.capacity()];
+
         for(int i=0; i<numRecords; i++){
-            int start = ((data[i*2 + 2] & 0xFF ) << 8) | (data[i*2 + 3] & 0xFF);
+            int start = data.getShort(i*2 + 2) & 0xFFFF;
             int end = previousStartOffset;
             previousStartOffset = start;
-            byte[] record = Arrays.copyOfRange(data, start, end);
-            records.add(convertToObjects(record, enumValues, table_name));
+            records.add(schema.decode(data, start, end, scratch));
         }
         return records;
         
     }
 
+    /*
+        * Like get_records_from_block, but only returns the records whose filter_column value passes filter,
+        * and only decodes the given columns of them, in the given order (storage positions)
+        * The filter column is decoded first, rejected records cost a single field
+    */
+    public List<Object[]> get_records_from_block(String table_name, int block_id, int filter_column, Predicate<Object> filter, int[] columns){
+        if(file_to_fileid.get(table_name) == null){
+            return null;
+        }
+        ByteBuffer data = get_block_view(table_name, block_id);
+        if(data == null){
+            return null;
+        }
+        // fields of a record are little endian, the page header is big endian
+        ByteBuffer records_view = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        List<Object[]> records = new ArrayList<Object[]>();
+        int numRecords = data.getShort(0) & 0xFFFF;
+        int previousStartOffset = data.capacity();
+        TableSchema schema = get_schema(table_name);
+        byte[] scratch = new byte[data.capacity()];
+
+        for(int i=0; i<numRecords; i++){
+            int start = data.getShort(i*2 + 2) & 0xFFFF;
+            int end = previousStartOffset;
+            previousStartOffset = start;
+            Object[] record = schema.decode_if(records_view, start, end, filter_column, filter, columns, scratch);
+            if(record != null){
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    // bounds [start, end) of the slot-th record of a data block, records are packed from the end of
+    // the block in slot order so a record ends where the one in the slot before it starts
+    private static int record_start(ByteBuffer data, int slot){
+        return data.getShort(slot * 2 + 2) & 0xFFFF;
+    }
+
+    private static int record_end(ByteBuffer data, int slot){
+        return slot == 0 ? data.capacity() : data.getShort(slot * 2) & 0xFFFF;
+    }
+
+    // view of the data block the record id points into, null if there is no such block or slot
+    private ByteBuffer record_view(String table_name, long rid){
+        int block_id = File.record_block(rid);
+        int slot = File.record_slot(rid);
+        if(block_id <= 0 || slot == File.NO_SLOT){
+            return null;
+        }
+        ByteBuffer data = get_block_view(table_name, block_id);
+        if(data == null || slot >= (data.getShort(0) & 0xFFFF)){
+            return null;
+        }
+        return data;
+    }
+
+    public Object[] fetch(String table_name, long rid){
+        return fetch(table_name, rid, null);
+    }
+
+    /*
+        * Decodes the one record with the record id rid (see File.record_id), found through the slot
+        * array of its block, no other record of the block is read
+        * Only the given columns (storage positions) in the given order, the whole record in storage order if null
+        * Returns null if the table or the record does not exist
+    */
+    public Object[] fetch(String table_name, long rid, int[] columns){
+        if(file_to_fileid.get(table_name) == null){
+            return null;
+        }
+        ByteBuffer data = record_view(table_name, rid);
+        if(data == null){
+            return null;
+        }
+        int slot = File.record_slot(rid);
+        int start = record_start(data, slot);
+        int end = record_end(data, slot);
+        TableSchema schema = get_schema(table_name);
+        byte[] scratch = new byte[end - start];
+        return columns == null ? schema.decode(data, start, end, scratch) : schema.decode(data, start, end, columns, scratch);
+    }
+
+    /*
+        * Decodes the given columns (storage positions) of the records rids into batch, row i holds the
+        * record rids[i], like get_column_batch does for the records of a block
+        * batch is reused when not null, it has to be built over the types of these columns
+        * Returns null if a record does not exist
+    */
+    public ColumnBatch get_record_batch(String table_name, List<Long> rids, int[] columns, ColumnBatch batch){
+        if(file_to_fileid.get(table_name) == null){
+            return null;
+        }
+        if(batch == null){
+            batch = new ColumnBatch(get_column_types(table_name, columns), rids.size());
+        }
+        batch.reset(rids.size());
+        TableSchema schema = get_schema(table_name);
+        byte[] scratch = null;
+        for(int i = 0; i < rids.size(); i++){
+            long rid = rids.get(i);
+            ByteBuffer data = record_view(table_name, rid);
+            if(data == null){
+                return null;
+            }
+            if(scratch == null){
+                scratch = new byte[data.capacity()];
+            }
+            int slot = File.record_slot(rid);
+            ByteBuffer records_view = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            schema.decode_into(records_view, record_start(data, slot), record_end(data, slot), columns, batch, i, scratch);
+        }
+        return batch;
+    }
+
+    // types of the given columns (storage positions), for building a ColumnBatch over them
+    public int[] get_column_types(String table_name, int[] columns){
+        TableSchema schema = get_schema(table_name);
+        int[] types = new int[columns.length];
+        for(int i = 0; i < columns.length; i++){
+            types[i] = schema.get_type(columns[i]);
+        }
+        return types;
+    }
+
+    /*
+        * Decodes the given columns (storage positions) of all records of the block into batch,
+        * vector v holds column columns[v], all rows start out selected
+        * batch is reused when not null, it has to be built over the types of these columns
+        * Returns null if the block does not exist
+    */
+    public ColumnBatch get_column_batch(String table_name, int block_id, int[] columns, ColumnBatch batch){
+        if(file_to_fileid.get(table_name) == null){
+            return null;
+        }
+        ByteBuffer data = get_block_view(table_name, block_id);
+        if(data == null){
+            return null;
+        }
+        ByteBuffer records_view = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int numRecords = data.getShort(0) & 0xFFFF;
+        if(batch == null){
+            batch = new ColumnBatch(get_column_types(table_name, columns), numRecords);
+        }
+        batch.reset(numRecords);
+        int previousStartOffset = data.capacity();
+        TableSchema schema = get_schema(table_name);
+        byte[] scratch = new byte[data.capacity()];
+
+        for(int i=0; i<numRecords; i++){
+            int start = data.getShort(i*2 + 2) & 0xFFFF;
+            int end = previousStartOffset;
+            previousStartOffset = start;
+            schema.decode_into(records_view, start, end, columns, batch, i, scratch);
+        }
+        return batch;
+    }
+
     public boolean create_index(String table_name, String column_name, int order) {
+        return build_index(table_name, column_name, order, -1);
+    }
+
+    // sort-then-build path, leaves are packed to fill_factor (0, 1] of their capacity
+    public boolean create_index(String table_name, String column_name, int order, double fill_factor) {
+        assert(fill_factor > 0 && fill_factor <= 1);
+        return build_index(table_name, column_name, order, fill_factor);
+    }
+
+    // indexes on several columns of a table, built from a single scan of its data blocks
+    public boolean create_indexes(String table_name, int order, String... column_names) {
+        return build_indexes(table_name, column_names, order, -1);
+    }
+
+    // same as above, the indexes are bulk loaded with leaves packed to fill_factor
+    public boolean create_indexes(String table_name, int order, double fill_factor, String... column_names) {
+        assert(fill_factor > 0 && fill_factor <= 1);
+        return build_indexes(table_name, column_names, order, fill_factor);
+    }
+
+    private boolean build_index(String table_name, String column_name, int order, double fill_factor) {
+        return build_indexes(table_name, new String[]{column_name}, order, fill_factor);
+    }
+
+    // empty index for keys of the given column type, null for unsupported types
+    // INTEGER and DOUBLE keys get trees that compare them as primitives, VARCHAR keys a tree with short separators
+    private static BPlusTreeIndexFile<?> new_index(int enumTypeId, int order) {
+        switch (enumTypeId) {
+            case 0:
+                return new StringBPlusTreeIndexFile(order);
+            case 1:
+                return new IntBPlusTreeIndexFile(order);
+            case 2:
+                return new BPlusTreeIndexFile<>(order, Boolean.class);
+            case 3:
+                return new BPlusTreeIndexFile<>(order, Float.class);
+            case 4:
+                return new DoubleBPlusTreeIndexFile(order);
+            default:
+                return null; // Handle unsupported data types
+        }
+    }
+
+    // inserts keys one at a time if fill_factor <= 0, bulk loads them otherwise
+    // each entry keeps the record id of its record, the block id and the slot in it
+    private static BPlusTreeIndexFile<?> fill_index(BPlusTreeIndexFile indexFile, List<Object> keys, List<Integer> blockIds, List<Integer> slots, double fill_factor) {
+        if(fill_factor > 0){
+            indexFile.bulk_load(keys, blockIds, slots, fill_factor);
+        } else {
+            for(int i = 0; i < keys.size(); i++){
+                indexFile.insert(keys.get(i), blockIds.get(i), slots.get(i)); // Insert the value into the index file
+            }
+        }
+        return indexFile;
+    }
+
+    /*
+        * Builds an index on each of column_names with one pass over the data blocks, every record
+        * is decoded once for all the key columns
+        * The trees do not share anything, so each is built by its own task on the fork/join pool
+        * Either all the indexes are built or none of them is registered
+    */
+    private boolean build_indexes(String table_name, String[] column_names, int order, double fill_factor) {
         /* Write your code here */
         try{
-            byte[] schemaData = get_data_block(table_name, 0); // finding the schema block
-            if(file_to_fileid.get(table_name) == null || schemaData == null){
+            if(file_to_fileid.get(table_name) == null || column_names.length == 0){
                 return false;
             }
-            Pair<Integer, Integer> typeAndIndex = getColumnTypeForColumnValue(schemaData, column_name);
-            int enumTypeId = typeAndIndex.getKey();
-            int indexOfType = typeAndIndex.getValue();
-            if(enumTypeId == -1){
-                return false;
+            TableSchema schema = get_schema(table_name);
+            int[] columns = new int[column_names.length];
+            for(int c = 0; c < columns.length; c++){
+                columns[c] = schema.get_position(column_names[c]);
+                if(columns[c] == -1 || new_index(schema.get_type(columns[c]), order) == null){
+                    return false;
+                }
             }
-            
-            switch (enumTypeId) {
-                case 0:
-                    indexFile = new BPlusTreeIndexFile<>(order, String.class);
-                    break;
-                case 1:
-                    indexFile = new BPlusTreeIndexFile<>(order, Integer.class);
-                    break;
-                case 2:
-                    indexFile = new BPlusTreeIndexFile<>(order, Boolean.class);
-                    break;
-                case 3:
-                    indexFile = new BPlusTreeIndexFile<>(order, Float.class);
-                    break;
-                case 4:
-                    indexFile = new BPlusTreeIndexFile<>(order, Double.class);
-                    break;
-                default:
-                    return false; // Handle unsupported data types
-            }
-            String fileName = table_name + "_" + column_name + "_index";
-            /* logic to insert the columns to bplus tree */
-            byte[] schemaBlock = get_data_block(table_name, 0); // schema block
-            List<Integer> enumValues = readEnumtypes(schemaBlock);
 
+            /* logic to insert the columns to bplus tree */
+            List<List<Object>> keys = new ArrayList<>();
+            List<List<Integer>> blockIds = new ArrayList<>();
+            List<List<Integer>> slots = new ArrayList<>();
+            for(int c = 0; c < columns.length; c++){
+                keys.add(new ArrayList<>());
+                blockIds.add(new ArrayList<>());
+                slots.add(new ArrayList<>());
+            }
             int block_id = 1;
-            byte[] blockOfRecords;
-            while((blockOfRecords = get_data_block(table_name, block_id)) != null){
-                int numRecords = ((blockOfRecords[0] & 0xFF ) << 8) | (blockOfRecords[1] & 0xFF);
-                int offsetIndex = 2;
-                int previousStartOffset = blockOfRecords.length;
+            ByteBuffer blockOfRecords;
+            byte[] scratch = null;
+            while((blockOfRecords = get_block_view(table_name, block_id)) != null){
+                if(scratch == null){
+                    scratch = new byte[blockOfRecords.capacity()];
+                }
+                int numRecords = blockOfRecords.getShort(0) & 0xFFFF;
+                int previousStartOffset = blockOfRecords.capacity();
                 for(int i=0; i<numRecords; i++){
-                    int start = ((blockOfRecords[(i * 2) + 2] & 0xFF) << 8) | (blockOfRecords[(i * 2) + 3] & 0xFF);
+                    int start = blockOfRecords.getShort(i * 2 + 2) & 0xFFFF;
                     int end = previousStartOffset;
                     previousStartOffset = start;
-                    byte[] record = Arrays.copyOfRange(blockOfRecords, start, end-1);
-                    byte[] data = extractColumnBytes(record, enumTypeId, indexOfType, enumValues);
-                    Object value = null;
-                    switch (enumTypeId) {
-                        case 1:
-                            int val = ((data[3] & 0xFF) << 24) |
-                                        ((data[2] & 0xFF) << 16) |
-                                        ((data[1] & 0xFF) << 8) |
-                                        (data[0] & 0xFF);
-                            value = val;
-                            break;
-                        case 0:
-                            value = new String(data, StandardCharsets.UTF_8); // Assuming UTF-8 encoding
-                            break;
-                        case 2:
-                            value = data[0] != 0;
-                            break;
-                        case 3:
-                            value = ByteBuffer.wrap(data, 0, data.length).getFloat();
-                            break;
-                        case 4:
-                            value = ByteBuffer.wrap(data, 0, data.length).getDouble();
-                            break;
-                    }
-                    if (value != null) {
-                        indexFile.insert(value, block_id); // Insert the value into the index file
+                    Object[] values = schema.decode(blockOfRecords, start, end, columns, scratch);
+                    for(int c = 0; c < columns.length; c++){
+                        if (values[c] != null) {
+                            keys.get(c).add(values[c]);
+                            blockIds.get(c).add(block_id);
+                            slots.get(c).add(i);
+                        }
                     }
                 }
                 block_id++;
             }
-            int fileIndex = db.addFile(indexFile);
-            file_to_fileid.put(fileName, fileIndex);
-            return false;
+
+            List<BPlusTreeIndexFile<?>> trees = new ArrayList<>();
+            if(columns.length == 1){
+                trees.add(fill_index(new_index(schema.get_type(columns[0]), order), keys.get(0), blockIds.get(0), slots.get(0), fill_factor));
+            } else {
+                List<ForkJoinTask<BPlusTreeIndexFile<?>>> tasks = new ArrayList<>();
+                for(int c = 0; c < columns.length; c++){
+                    BPlusTreeIndexFile<?> indexFile = new_index(schema.get_type(columns[c]), order);
+                    List<Object> columnKeys = keys.get(c);
+                    List<Integer> columnBlockIds = blockIds.get(c);
+                    List<Integer> columnSlots = slots.get(c);
+                    tasks.add(ForkJoinPool.commonPool().submit(() -> fill_index(indexFile, columnKeys, columnBlockIds, columnSlots, fill_factor)));
+                }
+                for(ForkJoinTask<BPlusTreeIndexFile<?>> task : tasks){
+                    trees.add(task.join());
+                }
+            }
+
+            for(int c = 0; c < columns.length; c++){
+                String fileName = index_name(table_name, column_names[c]);
+                // an index built again on the same column takes the place of the old one
+                Integer fileIndex = file_to_fileid.get(fileName);
+                if(fileIndex != null){
+                    db.replaceFile(fileIndex, trees.get(c));
+                } else {
+                    file_to_fileid.put(fileName, db.addFile(trees.get(c)));
+                }
+                indexes.put(fileName, trees.get(c));
+            }
+            return true;
         }catch (Exception e){
             return false;
         }
     }
 
+    // value of the literal as the java type of the column, null for unsupported types
+    private Object literalValue(int enumTypeId, RexLiteral value) {
+        switch (enumTypeId) {
+            case 0:
+                return value.getValueAs(String.class);
+            case 1:
+                return Integer.parseInt(value.toString());
+            case 2:
+                return Boolean.parseBoolean(value.toString());
+            case 3:
+                return Float.parseFloat(value.toString());
+            case 4:
+                return Double.parseDouble(value.toString());
+            default:
+                return null;
+        }
+    }
+
     // returns the block_id of the leaf node where the key is present
     public int search(String table_name, String column_name, RexLiteral value) {
         /* Write your code here */
@@ -767,47 +1041,188 @@ public class StorageManager {
                 return -1;
             }
 
-            byte[] data = get_data_block(table_name, 0);
-            if(data == null) return -1;
-
-            Pair<Integer, Integer> typeAndIndex = getColumnTypeForColumnValue(data, column_name);
-            int enumTypeId = typeAndIndex.getKey();
-            int indexOfType = typeAndIndex.getValue();
-            if(enumTypeId == -1){
+            TableSchema schema = get_schema(table_name);
+            int column = schema.get_position(column_name);
+            if(column == -1){
                 return -1;
             }
-            Object valuei;
-            switch (enumTypeId) {
-                case 0:
-                    valuei = value.toString();
-                    break;
-                case 1:
-                    valuei = Integer.parseInt(value.toString());
-                    break;
-                case 2:
-                    valuei = Boolean.parseBoolean(value.toString());
-                    break;
-                case 3:
-                    valuei = Float.parseFloat(value.toString());
-                    break;
-                case 4:
-                    valuei = Double.parseDouble(value.toString());
-                    break;
-                default:
-                    return -1; // Handle unsupported data types
-            }
-
-            return indexFile.search(valuei);
+            Object valuei = literalValue(schema.get_type(column), value);
+            if(valuei == null){
+                return -1; // Handle unsupported data types
+            }
+
+            return db.search_index(index_file_id(table_name, column_name), valuei);
         }
         catch(Exception e){
             return -1;
         }
     }
 
+    // streams the (key, block id) entries of the index on column_name with keys between low and high,
+    // in decreasing key order if reverse is set, null if there is no index on the column
+    public IndexCursor<Object> scan_index(String table_name, String column_name, Object low, boolean low_inclusive, Object high, boolean high_inclusive, boolean reverse) {
+        if(!check_file_exists(table_name) || !check_index_exists(table_name, column_name)){
+            return null;
+        }
+        int file_id = index_file_id(table_name, column_name);
+        return db.scan_index(file_id, low, low_inclusive, high, high_inclusive, reverse);
+    }
+
+    // returns the distinct data block ids, in increasing order, of the records whose column value
+    // lies between low and high (null bounds are open), null if there is no index on the column
+    public List<Integer> search_range(String table_name, String column_name, Object low, boolean low_inclusive, Object high, boolean high_inclusive) {
+        if(!check_file_exists(table_name) || !check_index_exists(table_name, column_name)){
+            return null;
+        }
+        int file_id = index_file_id(table_name, column_name);
+        List<Integer> block_ids = db.search_index_range(file_id, low, low_inclusive, high, high_inclusive);
+        if(block_ids == null){
+            return null;
+        }
+        block_ids.sort(null);
+        List<Integer> distinct = new ArrayList<>();
+        for(int block_id : block_ids){
+            if(distinct.isEmpty() || distinct.get(distinct.size() - 1) != block_id){
+                distinct.add(block_id);
+            }
+        }
+        return distinct;
+    }
+
+    // returns the record ids, in key order, of the records whose column value lies between low and high
+    // (null bounds are open), see File.record_id
+    // null if there is no index on the column or it holds entries without a record slot
+    public List<Long> search_records(String table_name, String column_name, Object low, boolean low_inclusive, Object high, boolean high_inclusive) {
+        if(!check_file_exists(table_name) || !check_index_exists(table_name, column_name)){
+            return null;
+        }
+        List<Long> rids = db.search_index_records(index_file_id(table_name, column_name), low, low_inclusive, high, high_inclusive);
+        if(rids == null){
+            return null;
+        }
+        for(long rid : rids){
+            if(File.record_slot(rid) == File.NO_SLOT){
+                return null;
+            }
+        }
+        return rids;
+    }
+
+    /*
+        * Inserts a row, given in the storage order of get_schema(table_name), into the table
+        * The record goes to a page with enough free space before a new page is opened, and the
+        * indexes on the table's columns get its key and its record id - it takes the last slot of its page
+        * Returns the block id of the record, -1 if the row could not be stored
+    */
+    public int insert_record(String table_name, Object[] row) {
+        TableSchema schema = get_schema(table_name);
+        if(schema == null || row.length != schema.get_num_columns()){
+            return -1;
+        }
+        int[] types = new int[schema.get_num_columns()];
+        for(int c = 0; c < types.length; c++){
+            types[c] = schema.get_type(c);
+        }
+        byte[] record = new RecordEncoder(types).encode(row);
+        int block_id = db.add_record(file_to_fileid.get(table_name), record);
+        if(block_id == -1){
+            return -1;
+        }
+        int slot = (get_block_view(table_name, block_id).getShort(0) & 0xFFFF) - 1;
+        for(int c = 0; c < types.length; c++){
+            String column_name = schema.get_column_name(c);
+            if(row[c] != null && check_index_exists(table_name, column_name)){
+                db.insert_index(index_file_id(table_name, column_name), row[c], block_id, slot);
+            }
+        }
+        return block_id;
+    }
+
     public boolean delete(String table_name, String column_name, RexLiteral value) {
         /* Write your code here */
         // Hint: You need to delete from both - the file and the index
-        return false;
+        try{
+            if(!check_file_exists(table_name)){
+                return false;
+            }
+            TableSchema schema = get_schema(table_name);
+            int column = schema.get_position(column_name);
+            if(column == -1){
+                return false;
+            }
+            Object key = literalValue(schema.get_type(column), value);
+            if(key == null){
+                return false;
+            }
+
+            // the index narrows the blocks to look at, otherwise every block is
+            List<Integer> block_ids;
+            if(check_index_exists(table_name, column_name)){
+                block_ids = search_range(table_name, column_name, key, true, key, true);
+            } else {
+                block_ids = new ArrayList<>();
+                for(int block_id = 1; get_block_view(table_name, block_id) != null; block_id++){
+                    block_ids.add(block_id);
+                }
+            }
+
+            int file_id = file_to_fileid.get(table_name);
+            boolean deleted = false;
+            for(int block_id : block_ids){
+                List<Object[]> records = get_records_from_block(table_name, block_id);
+                boolean[] removed = new boolean[records.size()];
+                // from the last slot down, removing a record shifts the slots after it
+                for(int slot = records.size() - 1; slot >= 0; slot--){
+                    Object[] record = records.get(slot);
+                    if(record[column] == null || !record[column].equals(key)){
+                        continue;
+                    }
+                    db.delete_record(file_id, block_id, slot);
+                    for(int c = 0; c < record.length; c++){
+                        String index_column = schema.get_column_name(c);
+                        if(record[c] != null && check_index_exists(table_name, index_column)){
+                            int index_id = index_file_id(table_name, index_column);
+                            // an entry that went in without a slot is taken by its block id alone
+                            if(!db.delete_from_index(index_id, record[c], block_id, slot)){
+                                db.delete_from_index(index_id, record[c], block_id);
+                            }
+                        }
+                    }
+                    removed[slot] = true;
+                    deleted = true;
+                }
+                renumber_slots(table_name, schema, block_id, records, removed);
+            }
+            return deleted;
+        }
+        catch(Exception e){
+            return false;
+        }
+    }
+
+    /*
+        * The records of a block left after the removed ones moved down to fill their slots, the index
+        * entries of each of them follow it to its new slot
+        * Done in increasing slot order, a slot an entry moves to has been left by an entry already moved
+    */
+    private void renumber_slots(String table_name, TableSchema schema, int block_id, List<Object[]> records, boolean[] removed) {
+        int shift = 0;
+        for(int slot = 0; slot < records.size(); slot++){
+            if(removed[slot]){
+                shift++;
+                continue;
+            }
+            if(shift == 0){
+                continue;
+            }
+            Object[] record = records.get(slot);
+            for(int c = 0; c < record.length; c++){
+                String index_column = schema.get_column_name(c);
+                if(record[c] != null && check_index_exists(table_name, index_column)){
+                    db.update_index_slot(index_file_id(table_name, index_column), record[c], block_id, slot, slot - shift);
+                }
+            }
+        }
     }
 
     // will be used for evaluation - DO NOT modify
@@ -817,7 +1232,7 @@ public class StorageManager {
 
     public <T> ArrayList<T> return_bfs_index(String table_name, String column_name) {
         if(check_index_exists(table_name, column_name)) {
-            int file_id = file_to_fileid.get(table_name + "_" + column_name + "_index");
+            int file_id = index_file_id(table_name, column_name);
             return db.return_bfs_index(file_id);
         } else {
             System.out.println("Index does not exist");
@@ -0,0 +1,296 @@
+package manager;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Predicate;
+
+/*
+    * Decoded schema block of a relational file, built once per table by the StorageManager
+    * Columns are kept in storage order - first all fixed length columns, then all variable length
+    * columns, each group in the order of the CSV header
+
+    * A record looks like -
+    * (offset | length) of each non null varchar | fixed length fields | null bitmap | varchar bytes
+    * Fields are little endian, the null bitmap has one bit per column in storage order, most
+    * significant bit first. A null varchar has no (offset | length) entry and a single 0 byte in the
+    * varchar bytes, a null fixed field is written as zeros
+ */
+public class TableSchema {
+
+    private final String[] column_names;
+    private final int[] types;
+    private final int num_fixed;
+
+    // offset of each fixed column from the start of the fixed fields, -1 for varchars
+    private final int[] fixed_offsets;
+    private final int fixed_length;
+    private final int bitmap_length;
+
+    private final HashMap<String, Integer> positions;
+
+    public TableSchema(byte[] schema_block) {
+        ByteBuffer schema = ByteBuffer.wrap(schema_block).order(ByteOrder.LITTLE_ENDIAN);
+        int num_columns = schema.getShort(0) & 0xFFFF;
+        column_names = new String[num_columns];
+        types = new int[num_columns];
+        fixed_offsets = new int[num_columns];
+        positions = new HashMap<>();
+
+        int fixed = 0;
+        int offset = 0;
+        for(int i = 0; i < num_columns; i++){
+            int entry = schema.getShort(2 + 2 * i) & 0xFFFF;
+            types[i] = schema_block[entry] & 0xFF;
+            int name_length = schema_block[entry + 1] & 0xFF;
+            column_names[i] = new String(schema_block, entry + 2, name_length, StandardCharsets.UTF_8);
+            positions.put(column_names[i], i);
+            if(types[i] == StorageManager.ColumnType.VARCHAR.ordinal()){
+                fixed_offsets[i] = -1;
+            } else {
+                fixed_offsets[i] = offset;
+                offset += field_length(types[i]);
+                fixed++;
+            }
+        }
+        num_fixed = fixed;
+        fixed_length = offset;
+        bitmap_length = (num_columns + 7) / 8;
+    }
+
+    private static int field_length(int type) {
+        if(type == StorageManager.ColumnType.INTEGER.ordinal() || type == StorageManager.ColumnType.FLOAT.ordinal()){
+            return 4;
+        } else if(type == StorageManager.ColumnType.DOUBLE.ordinal()){
+            return 8;
+        } else if(type == StorageManager.ColumnType.BOOLEAN.ordinal()){
+            return 1;
+        }
+        return 0;
+    }
+
+    public int get_num_columns() {
+        return types.length;
+    }
+
+    public int get_num_fixed() {
+        return num_fixed;
+    }
+
+    public String get_column_name(int column) {
+        return column_names[column];
+    }
+
+    public int get_type(int column) {
+        return types[column];
+    }
+
+    // types in storage order, as ColumnType ordinals
+    public List<Integer> get_types() {
+        List<Integer> result = new ArrayList<>();
+        for(int type : types){
+            result.add(type);
+        }
+        return result;
+    }
+
+    // storage position of the column, -1 if there is no such column
+    public int get_position(String column_name) {
+        Integer position = positions.get(column_name);
+        return position == null ? -1 : position;
+    }
+
+    public int get_fixed_length() {
+        return fixed_length;
+    }
+
+    public int get_bitmap_length() {
+        return bitmap_length;
+    }
+
+    private boolean is_null(ByteBuffer record, int bitmap, int column) {
+        return ((record.get(bitmap + column / 8) >> (7 - column % 8)) & 1) == 1;
+    }
+
+    /*
+        * Number of (offset | length) entries at the start of the record in record[start, end)
+        * It is not stored, it is the one count for which the null bitmap, the first offset and
+        * the size of the varchar bytes all agree
+    */
+    private int num_var_entries(ByteBuffer record, int start, int end) {
+        int num_var = types.length - num_fixed;
+        for(int k = num_var; k > 0; k--){
+            int bitmap = start + 4 * k + fixed_length;
+            int data = bitmap + bitmap_length;
+            if(data > end || (record.getShort(start) & 0xFFFF) != data - start){
+                continue;
+            }
+            int nulls = 0;
+            for(int c = num_fixed; c < types.length; c++){
+                if(is_null(record, bitmap, c)){
+                    nulls++;
+                }
+            }
+            if(nulls != num_var - k){
+                continue;
+            }
+            int data_length = nulls;
+            for(int e = 0; e < k; e++){
+                data_length += record.getShort(start + 4 * e + 2) & 0xFFFF;
+            }
+            if(data + data_length == end){
+                return k;
+            }
+        }
+        return 0;
+    }
+
+    // records are read through a little endian buffer, callers decoding many records of a page
+    // can pass one to avoid a duplicate per call
+    private static ByteBuffer little_endian(ByteBuffer page) {
+        if(page.order() == ByteOrder.LITTLE_ENDIAN){
+            return page;
+        }
+        return page.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // decodes the record stored in page[start, end) into an array in storage order
+    // scratch is reused for the bytes of string fields, it should hold at least a block
+    public Object[] decode(ByteBuffer page, int start, int end, byte[] scratch) {
+        ByteBuffer record = little_endian(page);
+        Object[] row = new Object[types.length];
+        int num_entries = num_var_entries(record, start, end);
+        int fixed = start + 4 * num_entries;
+        int bitmap = fixed + fixed_length;
+        for(int c = 0; c < num_fixed; c++){
+            if(!is_null(record, bitmap, c)){
+                row[c] = read_fixed(record, fixed + fixed_offsets[c], types[c]);
+            }
+        }
+        int position = bitmap + bitmap_length;
+        int entry = 0;
+        for(int c = num_fixed; c < types.length; c++){
+            if(is_null(record, bitmap, c)){
+                // placeholder byte of the null varchar
+                position += 1;
+                continue;
+            }
+            int length = record.getShort(start + 4 * entry + 2) & 0xFFFF;
+            row[c] = read_string(record, position, length, scratch);
+            position += length;
+            entry++;
+        }
+        return row;
+    }
+
+    // decodes a single column of the record stored in page[start, end)
+    public Object decode_column(ByteBuffer page, int start, int end, int column, byte[] scratch) {
+        ByteBuffer record = little_endian(page);
+        return read_column(record, start, num_var_entries(record, start, end), column, scratch);
+    }
+
+    // decodes only the given columns (storage positions) of the record stored in page[start, end),
+    // in the order they are given, the other fields are not touched
+    public Object[] decode(ByteBuffer page, int start, int end, int[] columns, byte[] scratch) {
+        ByteBuffer record = little_endian(page);
+        int num_entries = num_var_entries(record, start, end);
+        Object[] row = new Object[columns.length];
+        for(int i = 0; i < columns.length; i++){
+            row[i] = read_column(record, start, num_entries, columns[i], scratch);
+        }
+        return row;
+    }
+
+    /*
+        * Decodes the filter column of the record stored in page[start, end) first and returns null
+        * if filter rejects its value, a null value is always rejected
+        * Otherwise decodes the given columns like decode above
+    */
+    public Object[] decode_if(ByteBuffer page, int start, int end, int filter_column, Predicate<Object> filter, int[] columns, byte[] scratch) {
+        ByteBuffer record = little_endian(page);
+        int num_entries = num_var_entries(record, start, end);
+        Object value = read_column(record, start, num_entries, filter_column, scratch);
+        if(value == null || !filter.test(value)){
+            return null;
+        }
+        Object[] row = new Object[columns.length];
+        for(int i = 0; i < columns.length; i++){
+            row[i] = columns[i] == filter_column ? value : read_column(record, start, num_entries, columns[i], scratch);
+        }
+        return row;
+    }
+
+    // writes the given columns of the record stored in page[start, end) into row of the batch,
+    // columns[v] is the storage position of the column held by vector v
+    // fixed fields go straight into the primitive vectors, nothing is boxed
+    public void decode_into(ByteBuffer page, int start, int end, int[] columns, ColumnBatch batch, int row, byte[] scratch) {
+        ByteBuffer record = little_endian(page);
+        int num_entries = num_var_entries(record, start, end);
+        int fixed = start + 4 * num_entries;
+        int bitmap = fixed + fixed_length;
+        for(int v = 0; v < columns.length; v++){
+            int column = columns[v];
+            if(is_null(record, bitmap, column)){
+                batch.set_null(v, row);
+                continue;
+            }
+            int type = types[column];
+            if(column >= num_fixed){
+                batch.set_string(v, row, (String) read_column(record, start, num_entries, column, scratch));
+            } else if(type == StorageManager.ColumnType.INTEGER.ordinal()){
+                batch.set_int(v, row, record.getInt(fixed + fixed_offsets[column]));
+            } else if(type == StorageManager.ColumnType.FLOAT.ordinal()){
+                batch.set_float(v, row, record.getFloat(fixed + fixed_offsets[column]));
+            } else if(type == StorageManager.ColumnType.DOUBLE.ordinal()){
+                batch.set_double(v, row, record.getDouble(fixed + fixed_offsets[column]));
+            } else {
+                batch.set_boolean(v, row, record.get(fixed + fixed_offsets[column]) != 0);
+            }
+        }
+    }
+
+    private Object read_column(ByteBuffer record, int start, int num_entries, int column, byte[] scratch) {
+        int bitmap = start + 4 * num_entries + fixed_length;
+        if(is_null(record, bitmap, column)){
+            return null;
+        }
+        if(column < num_fixed){
+            return read_fixed(record, start + 4 * num_entries + fixed_offsets[column], types[column]);
+        }
+        int position = bitmap + bitmap_length;
+        int entry = 0;
+        for(int c = num_fixed; c < column; c++){
+            if(is_null(record, bitmap, c)){
+                position += 1;
+            } else {
+                position += record.getShort(start + 4 * entry + 2) & 0xFFFF;
+                entry++;
+            }
+        }
+        int length = record.getShort(start + 4 * entry + 2) & 0xFFFF;
+        return read_string(record, position, length, scratch);
+    }
+
+    private Object read_fixed(ByteBuffer record, int offset, int type) {
+        if(type == StorageManager.ColumnType.INTEGER.ordinal()){
+            return record.getInt(offset);
+        } else if(type == StorageManager.ColumnType.FLOAT.ordinal()){
+            return record.getFloat(offset);
+        } else if(type == StorageManager.ColumnType.DOUBLE.ordinal()){
+            return record.getDouble(offset);
+        } else if(type == StorageManager.ColumnType.BOOLEAN.ordinal()){
+            return record.get(offset) != 0;
+        }
+        return null;
+    }
+
+    private String read_string(ByteBuffer record, int offset, int length, byte[] scratch) {
+        for(int b = 0; b < length; b++){
+            scratch[b] = record.get(offset + b);
+        }
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+}
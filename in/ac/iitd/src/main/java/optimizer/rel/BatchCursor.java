@@ -0,0 +1,65 @@
+package optimizer.rel;
+
+import manager.ColumnBatch;
+
+import org.apache.calcite.rel.type.RelDataType;
+
+// Batch at a time results of a PRel, see PRel.openBatches
+public interface BatchCursor {
+
+    // rows in a batch built from a row cursor
+    int BATCH_ROWS = 1024;
+
+    // returns the next batch, null once there are no more rows
+    // a batch is only valid until the next call, its vectors can be reused
+    public ColumnBatch nextBatch();
+
+    // releases what the cursor holds, a consumer can call it before the last batch to stop early
+    public default void close() {
+    }
+
+    // batches of up to BATCH_ROWS rows of the cursor, with one vector per field of row_type
+    public static BatchCursor of(RowCursor rows, RelDataType row_type) {
+        return new BatchCursor() {
+            private RowCursor cursor = rows;
+            private ColumnBatch batch;
+
+            @Override
+            public ColumnBatch nextBatch() {
+                if(cursor == null){
+                    return null;
+                }
+                if(batch == null){
+                    batch = ColumnBatch.of(row_type, BATCH_ROWS);
+                }
+                batch.reset(BATCH_ROWS);
+                int size = 0;
+                Object[] row;
+                while(size < BATCH_ROWS && (row = cursor.next()) != null){
+                    for(int v = 0; v < row.length; v++){
+                        batch.set(v, size, row[v]);
+                    }
+                    size++;
+                }
+                if(size < BATCH_ROWS){
+                    cursor.close();
+                    cursor = null;
+                }
+                if(size == 0){
+                    return null;
+                }
+                batch.reset(size);
+                return batch;
+            }
+
+            @Override
+            public void close() {
+                if(cursor != null){
+                    cursor.close();
+                    cursor = null;
+                }
+                batch = null;
+            }
+        };
+    }
+}
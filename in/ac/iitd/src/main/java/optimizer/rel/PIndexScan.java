@@ -1,17 +1,25 @@
 package optimizer.rel;
 
 import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
 import org.apache.calcite.plan.RelOptTable;
 import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.metadata.RelMdUtil;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeField;
 import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import manager.ColumnBatch;
 import manager.StorageManager;
+import manager.TableSchema;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 // Operator trigged when doing indexed scan
@@ -22,6 +30,9 @@ public class PIndexScan extends TableScan implements PRel {
         private final RelDataType rowType;
         private final RelOptTable table;
         private final RexNode filter;
+
+        // records decoded into one batch by a point lookup
+        private static final int RECORDS_PER_BATCH = 1024;
     
         public PIndexScan(RelOptCluster cluster, RelTraitSet traitSet, RelOptTable table, RexNode filter, List<RexNode> projects) {
             super(cluster, traitSet, table);
@@ -50,6 +61,43 @@ public class PIndexScan extends TableScan implements PRel {
             return table.getQualifiedName().get(1);
         }
 
+        // storage manager registered in the planner context, null when planning without one
+        private StorageManager plannerStorage() {
+            return getCluster().getPlanner().getContext().unwrap(StorageManager.class);
+        }
+
+        // the record count kept by the storage manager, scaled by the selectivity of the filter
+        @Override
+        public double estimateRowCount(RelMetadataQuery mq) {
+            StorageManager storage_manager = plannerStorage();
+            int numRecords = storage_manager == null ? -1 : storage_manager.get_num_records(getTableName());
+            if(numRecords < 0){
+                return super.estimateRowCount(mq);
+            }
+            return numRecords * RelMdUtil.guessSelectivity(filter);
+        }
+
+        // an indexed filter only reads its share of the data blocks, any other scan reads them all
+        @Override
+        public RelOptCost computeSelfCost(RelOptPlanner planner, RelMetadataQuery mq) {
+            StorageManager storage_manager = plannerStorage();
+            int numBlocks = storage_manager == null ? -1 : storage_manager.get_num_data_blocks(getTableName());
+            if(numBlocks < 0){
+                return super.computeSelfCost(planner, mq);
+            }
+            double rows = estimateRowCount(mq);
+            double io = numBlocks;
+            if(filter instanceof RexCall && !filter.toString().startsWith("<>")
+                    && ((RexCall) filter).operands.get(0) instanceof RexInputRef){
+                int cidx = ((RexInputRef) ((RexCall) filter).operands.get(0)).getIndex();
+                String column = rowType.getFieldList().get(cidx).getName();
+                if(storage_manager.check_index_exists(getTableName(), column)){
+                    io = Math.ceil(numBlocks * RelMdUtil.guessSelectivity(filter));
+                }
+            }
+            return planner.getCostFactory().makeCost(rows, rows, io);
+        }
+
         public int compare(Object key1, Object key2) {
             if (key1 instanceof Comparable && key2 instanceof Comparable) {
                 Comparable<Object> comparableKey1 = (Comparable<Object>) key1;
@@ -116,44 +164,172 @@ public class PIndexScan extends TableScan implements PRel {
 
         
 
+        // block ids of the records that can satisfy "column op val", in increasing order
+        // null if the index cannot narrow the scan down (no index or a <> predicate)
+        private List<Integer> indexedBlocks(StorageManager storage_manager, String tableName, String columnName, String op, Object val) {
+            switch (op) {
+                case "=":
+                    return storage_manager.search_range(tableName, columnName, val, true, val, true);
+                case ">":
+                    return storage_manager.search_range(tableName, columnName, val, false, null, false);
+                case ">=":
+                    return storage_manager.search_range(tableName, columnName, val, true, null, false);
+                case "<":
+                    return storage_manager.search_range(tableName, columnName, null, false, val, false);
+                case "<=":
+                    return storage_manager.search_range(tableName, columnName, null, false, val, true);
+                default:
+                    return null;
+            }
+        }
+
+        // storage[i] is the position in a stored record of the i-th field of the row type
+        // records keep the fixed length columns first, the row type follows the CSV header
+        private int[] storagePositions(StorageManager storage_manager, String tableName) {
+            List<RelDataTypeField> fields = rowType.getFieldList();
+            TableSchema schema = storage_manager.get_schema(tableName);
+            int[] storage = new int[fields.size()];
+            for(int i = 0; i < fields.size(); i++){
+                int position = schema.get_position(fields.get(i).getName());
+                storage[i] = position == -1 ? i : position;
+            }
+            return storage;
+        }
+
+        // storage positions of the projected columns, in projection order
+        private int[] projectedColumns(int[] storage) {
+            int[] columns = new int[projects.size()];
+            for(int idx = 0; idx < projects.size(); idx++){
+                String rexString = projects.get(idx).toString();
+                int columnIndex = Integer.parseInt(rexString.substring(1));
+                columns[idx] = storage[columnIndex];
+            }
+            return columns;
+        }
+
         @Override
-        public List<Object[]> evaluate(StorageManager storage_manager) {
+        public BatchCursor openBatches(StorageManager storage_manager) {
             String tableName = getTableName();
-            toPrint();
-            /* Write your code here */
-            try{
+            if(!storage_manager.check_file_exists(tableName)){
+                return null;
+            }
+            List<RelDataTypeField> fields = rowType.getFieldList();
+            String a = filter.toString();
+            int id = a.indexOf("(");
+            String op = a.substring(0, id);
+            RexCall call = ((RexCall) filter);
+            RexNode firstOperand = call.operands.get(0);
+            int cidx = Integer.parseInt(firstOperand.toString().substring(1));
+            RexNode literalValue = call.operands.get(1);
+            Object val = createFieldValue(fields.get(cidx).getType(),literalValue.toString());
+            int[] storage = storagePositions(storage_manager, tableName);
 
-                if(!storage_manager.check_file_exists(tableName)){
-                    return null;
+            // vector 0 holds the filter column, the projected columns follow it
+            int[] projected = projectedColumns(storage);
+            int[] columns = new int[projected.length + 1];
+            columns[0] = storage[cidx];
+            System.arraycopy(projected, 0, columns, 1, projected.length);
+            int[] output = new int[projected.length];
+            for(int i = 0; i < output.length; i++){
+                output[i] = i + 1;
+            }
+
+            // a point lookup decodes only the records the matching leaf entries point to
+            if(val != null && op.equals("=")){
+                List<Long> record_ids = storage_manager.search_records(tableName, fields.get(cidx).getName(), val, true, val, true);
+                if(record_ids != null){
+                    return recordBatches(storage_manager, tableName, record_ids, columns, output);
                 }
-                int block_id = 1;
-                List<Object[]> result = new ArrayList<Object[]>();
-                List<Object[]> data = new ArrayList<Object[]>();
-                List<RelDataTypeField> fields = rowType.getFieldList();
-                String a = filter.toString();
-                int id = a.indexOf("(");
-                String op = a.substring(0, id);
-                RexCall call = ((RexCall) filter);
-                RexNode firstOperand = call.operands.get(0);
-                int cidx = Integer.parseInt(firstOperand.toString().substring(1));
-                RexNode literalValue = call.operands.get(1);
-                Object val = createFieldValue(fields.get(cidx).getType(),literalValue.toString());
-
-                while((data = storage_manager.get_records_from_block(tableName, block_id)) != null){
-                    for(Object[] row : data){
-                        if(evaluateCondition(op, row[cidx], val)){
-                            Object[] projectedRow = new Object[projects.size()];
-                            for(int idx = 0; idx < projects.size(); idx++){
-                                String rexString = projects.get(idx).toString();
-                                int columnIndex = Integer.parseInt(rexString.substring(1));
-                                projectedRow[idx] = row[columnIndex];
-                                
+            }
+
+            // only the blocks referenced by the matching leaf entries are read
+            // rows are still checked against the predicate, a block can hold non matching rows too
+            List<Integer> block_ids = null;
+            if(val != null){
+                block_ids = indexedBlocks(storage_manager, tableName, fields.get(cidx).getName(), op, val);
+            }
+            Iterator<Integer> indexed = block_ids == null ? null : block_ids.iterator();
+
+            return new BatchCursor() {
+                private int nextBlock = 1;
+                private ColumnBatch batch;
 
+                @Override
+                public ColumnBatch nextBatch() {
+                    while(true){
+                        int block_id;
+                        if(indexed != null){
+                            if(!indexed.hasNext()){
+                                return null;
                             }
-                            result.add(projectedRow);
+                            block_id = indexed.next();
+                        } else {
+                            block_id = nextBlock++;
                         }
+                        ColumnBatch filled = storage_manager.get_column_batch(tableName, block_id, columns, batch);
+                        if(filled == null){
+                            if(indexed != null){
+                                continue;
+                            }
+                            return null;
+                        }
+                        batch = filled;
+                        batch.select(0, op, val);
+                        if(batch.get_num_selected() > 0){
+                            return batch.project(output);
+                        }
+                    }
+                }
+            };
+        }
+
+        // batches of up to RECORDS_PER_BATCH of the records, fetched through their record ids
+        private BatchCursor recordBatches(StorageManager storage_manager, String tableName, List<Long> record_ids, int[] columns, int[] output) {
+            return new BatchCursor() {
+                private int next = 0;
+                private ColumnBatch batch;
+
+                @Override
+                public ColumnBatch nextBatch() {
+                    if(next >= record_ids.size()){
+                        return null;
+                    }
+                    int end = Math.min(next + RECORDS_PER_BATCH, record_ids.size());
+                    ColumnBatch filled = storage_manager.get_record_batch(tableName, record_ids.subList(next, end), columns, batch);
+                    next = end;
+                    if(filled == null){
+                        return null;
                     }
-                    block_id++;
+                    batch = filled;
+                    return batch.project(output);
+                }
+            };
+        }
+
+        // streams the rows block by block, only the current block is decoded at a time
+        @Override
+        public RowCursor open(StorageManager storage_manager) {
+            try{
+                BatchCursor cursor = openBatches(storage_manager);
+                return cursor == null ? null : RowCursor.of(cursor);
+            }catch(Exception e){
+                return null;
+            }
+        }
+
+        @Override
+        public List<Object[]> evaluate(StorageManager storage_manager) {
+            toPrint();
+            /* Write your code here */
+            try{
+                BatchCursor cursor = openBatches(storage_manager);
+                if(cursor == null){
+                    return null;
+                }
+                List<Object[]> result = new ArrayList<Object[]>();
+                ColumnBatch batch;
+                while((batch = cursor.nextBatch()) != null){
+                    result.addAll(batch.to_rows());
                 }
                 return result;
 
@@ -8,4 +8,19 @@ import org.apache.calcite.rel.RelNode;
 
 public interface PRel extends RelNode {   
     public List <Object []> evaluate(StorageManager storage_manager);
-}
\ No newline at end of file
+
+    // row at a time version of evaluate, null when evaluate would return null
+    // the default materializes the result of evaluate, operators that can stream override it
+    default RowCursor open(StorageManager storage_manager) {
+        List<Object []> rows = evaluate(storage_manager);
+        return rows == null ? null : RowCursor.of(rows);
+    }
+
+    // batch at a time version of evaluate, the batches hold the same rows evaluate returns
+    // the default packs the rows of open into batches over the row type, operators that decode
+    // straight into batches override it
+    default BatchCursor openBatches(StorageManager storage_manager) {
+        RowCursor rows = open(storage_manager);
+        return rows == null ? null : BatchCursor.of(rows, getRowType());
+    }
+}
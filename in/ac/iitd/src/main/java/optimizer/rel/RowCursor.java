@@ -0,0 +1,78 @@
+package optimizer.rel;
+
+import manager.ColumnBatch;
+
+import java.util.Iterator;
+import java.util.List;
+
+/*
+    * Row at a time results of a PRel, see PRel.open
+    * next returns the rows one by one and null once there are none left
+    * close releases what the cursor holds, a consumer can call it before the last row
+    * to stop the scan early
+ */
+public interface RowCursor {
+
+    public Object[] next();
+
+    public void close();
+
+    // cursor over rows that are already materialized
+    public static RowCursor of(List<Object[]> rows) {
+        return new RowCursor() {
+            private Iterator<Object[]> iterator = rows.iterator();
+
+            @Override
+            public Object[] next() {
+                if(iterator == null || !iterator.hasNext()){
+                    return null;
+                }
+                return iterator.next();
+            }
+
+            @Override
+            public void close() {
+                iterator = null;
+            }
+        };
+    }
+
+    // cursor over the selected rows of each batch, a row is only boxed when next reaches it
+    public static RowCursor of(BatchCursor batches) {
+        return new RowCursor() {
+            private BatchCursor cursor = batches;
+            private ColumnBatch batch;
+            private int position;
+
+            @Override
+            public Object[] next() {
+                while(batch == null || position == batch.get_num_selected()){
+                    if(cursor == null){
+                        return null;
+                    }
+                    batch = cursor.nextBatch();
+                    position = 0;
+                    if(batch == null){
+                        cursor.close();
+                        cursor = null;
+                    }
+                }
+                int row = batch.get_selection()[position++];
+                Object[] values = new Object[batch.get_num_vectors()];
+                for(int v = 0; v < values.length; v++){
+                    values[v] = batch.get(v, row);
+                }
+                return values;
+            }
+
+            @Override
+            public void close() {
+                if(cursor != null){
+                    cursor.close();
+                    cursor = null;
+                }
+                batch = null;
+            }
+        };
+    }
+}
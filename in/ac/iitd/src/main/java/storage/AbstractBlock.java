@@ -1,16 +1,22 @@
 package storage;
 
+import java.nio.ByteBuffer;
+
 // Abstract Block class - 4kB fixed size blocks
 // will be extended by LLD block and TreeNode
 
 public abstract class AbstractBlock {
-    
+
     protected static final int block_capacity = 4096; // 4KB fixed size blocks
     protected byte[] data;
 
+    // big endian view over data, used by the accessors below
+    protected ByteBuffer buffer;
+
     protected AbstractBlock(byte[] data) {
         this.data = new byte[block_capacity];
-        
+        this.buffer = ByteBuffer.wrap(this.data);
+
         // if data is larger than block_capacity, only copy block_capacity bytes
         int bytes_to_copy = Math.min(data.length, block_capacity);
         System.arraycopy(data, 0, this.data, 0, bytes_to_copy);
@@ -19,6 +25,7 @@ public abstract class AbstractBlock {
 
     protected AbstractBlock(){
         this.data = new byte[block_capacity];
+        this.buffer = ByteBuffer.wrap(this.data);
     }
 
     public int get_block_capacity() {
@@ -45,4 +52,57 @@ public abstract class AbstractBlock {
         System.arraycopy(data_to_write, 0, data, offset, data_to_write.length);
         return;
     }
+
+    // copies length bytes of src starting at src_offset to offset
+    public void write_data(int offset, byte[] src, int src_offset, int length){
+        if(offset + length > block_capacity){
+            return;
+        }
+        System.arraycopy(src, src_offset, data, offset, length);
+        return;
+    }
+
+    // read only view of the block, the bytes are not copied
+    public ByteBuffer get_view() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    // in place accessors, nothing is allocated
+    // 2 byte fields (counts, offsets, block ids) are unsigned
+    public int get_short(int offset) {
+        return buffer.getShort(offset) & 0xFFFF;
+    }
+
+    public void write_short(int offset, int value) {
+        buffer.putShort(offset, (short) value);
+    }
+
+    public int get_int(int offset) {
+        return buffer.getInt(offset);
+    }
+
+    public void write_int(int offset, int value) {
+        buffer.putInt(offset, value);
+    }
+
+    public long get_long(int offset) {
+        return buffer.getLong(offset);
+    }
+
+    public void write_long(int offset, long value) {
+        buffer.putLong(offset, value);
+    }
+
+    public double get_double(int offset) {
+        return buffer.getDouble(offset);
+    }
+
+    public void write_double(int offset, double value) {
+        buffer.putDouble(offset, value);
+    }
+
+    // moves length bytes from src to dst within the block, ranges may overlap
+    public void move_data(int src, int dst, int length) {
+        System.arraycopy(data, src, data, dst, length);
+    }
 }
@@ -1,11 +1,12 @@
 package storage;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 // Abstract File class - will be extended by LLD file and Tree
 public abstract class AbstractFile <T extends AbstractBlock> {
-    
+
     protected List<T> blocks;
 
     public AbstractFile(List<T> blocks) {
@@ -20,24 +21,54 @@ public abstract class AbstractFile <T extends AbstractBlock> {
         blocks.add(block);
     }
 
+    public int get_num_blocks() {
+        return blocks.size();
+    }
+
+    // every block access goes through get_block / release_block
+    // so that files which do not keep their blocks in memory can override them
+    protected T get_block(int block_id) {
+        return blocks.get(block_id);
+    }
+
+    protected void release_block(int block_id, boolean dirty) {
+        return;
+    }
+
     public byte[] get_data(int block_id){
-        if(block_id >= blocks.size()){
+        if(block_id >= get_num_blocks()){
             return null;
         }
-        return blocks.get(block_id).get_data();
+        byte[] data = get_block(block_id).get_data();
+        release_block(block_id, false);
+        return data;
     }
 
     public byte[] get_data(int block_id, int offset, int length){
-        if(block_id >= blocks.size()){
+        if(block_id >= get_num_blocks()){
+            return null;
+        }
+        byte[] data = get_block(block_id).get_data(offset, length);
+        release_block(block_id, false);
+        return data;
+    }
+
+    // read only view of the whole block, the bytes are not copied
+    // the view reflects later writes to the block
+    public ByteBuffer get_view(int block_id){
+        if(block_id >= get_num_blocks()){
             return null;
         }
-        return blocks.get(block_id).get_data(offset, length);
+        ByteBuffer view = get_block(block_id).get_view();
+        release_block(block_id, false);
+        return view;
     }
 
     public void write_data(int block_id, int offset, byte[] data){
-        if(block_id >= blocks.size()){
+        if(block_id >= get_num_blocks()){
             return;
         }
-        blocks.get(block_id).write_data(offset, data);
+        get_block(block_id).write_data(offset, data);
+        release_block(block_id, true);
     }
 }
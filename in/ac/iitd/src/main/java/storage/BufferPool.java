@@ -0,0 +1,156 @@
+package storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+
+/*
+    * A BufferPool is a fixed number of in-memory frames caching pages of PageFiles
+    * A page has to be pinned before it is used and unpinned once done with it
+    * Pinned pages are never evicted, unpinned ones are evicted with the clock policy
+    * Dirty pages are written back to their PageFile when evicted or flushed
+ */
+public class BufferPool {
+
+    private final Block[] frames;
+    private final PageFile[] frame_file;
+    private final int[] frame_page;
+    private final int[] pin_count;
+    private final boolean[] dirty;
+    private final boolean[] referenced;
+
+    // PageFile -> (page_id -> frame)
+    private final HashMap<PageFile, HashMap<Integer, Integer>> page_table;
+    private int clock_hand;
+
+    public BufferPool(int num_frames) {
+        assert(num_frames > 0);
+        frames = new Block[num_frames];
+        frame_file = new PageFile[num_frames];
+        frame_page = new int[num_frames];
+        pin_count = new int[num_frames];
+        dirty = new boolean[num_frames];
+        referenced = new boolean[num_frames];
+        page_table = new HashMap<>();
+        clock_hand = 0;
+        for(int i = 0; i < num_frames; i++){
+            frames[i] = new Block();
+            frame_page[i] = -1;
+        }
+    }
+
+    public int get_num_frames() {
+        return frames.length;
+    }
+
+    // returns the block holding the page, the page stays in memory until unpinned
+    public synchronized Block pin(PageFile file, int page_id) {
+        HashMap<Integer, Integer> pages = page_table.computeIfAbsent(file, k -> new HashMap<>());
+        Integer frame = pages.get(page_id);
+        if(frame == null){
+            frame = find_victim();
+            try{
+                file.read_page(page_id, frames[frame].get_data());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            frame_file[frame] = file;
+            frame_page[frame] = page_id;
+            pages.put(page_id, frame);
+        }
+        pin_count[frame]++;
+        referenced[frame] = true;
+        return frames[frame];
+    }
+
+    public synchronized void unpin(PageFile file, int page_id, boolean is_dirty) {
+        HashMap<Integer, Integer> pages = page_table.get(file);
+        Integer frame = pages == null ? null : pages.get(page_id);
+        if(frame == null || pin_count[frame] == 0){
+            return;
+        }
+        pin_count[frame]--;
+        dirty[frame] |= is_dirty;
+    }
+
+    // true if the page is currently held in a frame
+    public synchronized boolean is_resident(PageFile file, int page_id) {
+        HashMap<Integer, Integer> pages = page_table.get(file);
+        return pages != null && pages.containsKey(page_id);
+    }
+
+    // writes back the page if it is held in a dirty frame
+    public synchronized void flush_page(PageFile file, int page_id) {
+        HashMap<Integer, Integer> pages = page_table.get(file);
+        Integer frame = pages == null ? null : pages.get(page_id);
+        if(frame != null){
+            write_back(frame);
+        }
+    }
+
+    // writes back all dirty pages of the file
+    public synchronized void flush(PageFile file) {
+        HashMap<Integer, Integer> pages = page_table.get(file);
+        if(pages == null){
+            return;
+        }
+        for(int frame : pages.values()){
+            write_back(frame);
+        }
+    }
+
+    public synchronized void flush_all() {
+        for(int i = 0; i < frames.length; i++){
+            write_back(i);
+        }
+    }
+
+    // flushes the file and drops all its pages from the pool
+    public synchronized void evict_all(PageFile file) {
+        HashMap<Integer, Integer> pages = page_table.remove(file);
+        if(pages == null){
+            return;
+        }
+        for(int frame : pages.values()){
+            assert(pin_count[frame] == 0);
+            write_back(frame);
+            frame_file[frame] = null;
+            frame_page[frame] = -1;
+        }
+    }
+
+    private void write_back(int frame) {
+        if(!dirty[frame] || frame_file[frame] == null){
+            return;
+        }
+        try{
+            frame_file[frame].write_page(frame_page[frame], frames[frame].get_data());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        dirty[frame] = false;
+    }
+
+    // clock sweep over the frames, skipping pinned ones
+    private int find_victim() {
+        for(int sweep = 0; sweep < 2 * frames.length; sweep++){
+            int frame = clock_hand;
+            clock_hand = (clock_hand + 1) % frames.length;
+            if(pin_count[frame] > 0){
+                continue;
+            }
+            if(referenced[frame]){
+                referenced[frame] = false;
+                continue;
+            }
+            if(frame_file[frame] != null){
+                write_back(frame);
+                page_table.get(frame_file[frame]).remove(frame_page[frame]);
+                frame_file[frame] = null;
+                frame_page[frame] = -1;
+            }
+            return frame;
+        }
+        throw new IllegalStateException("All " + frames.length + " frames of the buffer pool are pinned");
+    }
+}
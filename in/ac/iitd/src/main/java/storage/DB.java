@@ -1,7 +1,9 @@
 package storage;
 
 import index.bplusTree.BPlusTreeIndexFile;
+import index.bplusTree.IndexCursor;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -25,6 +27,11 @@ public class DB {
 
     }
     
+    // puts file in place of the file with file_id, the id stays valid
+    public void replaceFile(int file_id, AbstractFile<? extends AbstractBlock> file) {
+        files.set(file_id, file);
+    }
+
     public byte[] get_data(int file_id, int block_id, int offset, int length){
         if(file_id >= files.size()){
             return null;
@@ -39,7 +46,16 @@ public class DB {
         return files.get(file_id).get_data(block_id);
     }
 
+    // read only view of the block, no bytes are copied
+    public ByteBuffer get_view(int file_id, int block_id){
+        if(file_id >= files.size()){
+            return null;
+        }
+        return files.get(file_id).get_view(block_id);
+    }
+
     // only applicable for relational files
+    // the count is kept in the metadata block, no data block is read
     public int get_num_records(int file_id){
         if(file_id >= files.size()){
             return -1;
@@ -64,6 +80,97 @@ public class DB {
         return -1;
     }
 
+    // only applicable for index tree file
+    // returns the block ids of the entries with keys between low and high, null bounds are open
+    public <T> List<Integer> search_index_range(int file_id, T low, boolean low_inclusive, T high, boolean high_inclusive){
+        if(file_id >= files.size()){
+            return null;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof BPlusTreeIndexFile){
+            return ((BPlusTreeIndexFile<T>) file).search_range(low, low_inclusive, high, high_inclusive);
+        }
+        return null;
+    }
+
+    // only applicable for index tree file
+    // returns the record ids of the entries with keys between low and high, see File.record_id
+    public <T> List<Long> search_index_records(int file_id, T low, boolean low_inclusive, T high, boolean high_inclusive){
+        if(file_id >= files.size()){
+            return null;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof BPlusTreeIndexFile){
+            return ((BPlusTreeIndexFile<T>) file).search_records(low, low_inclusive, high, high_inclusive);
+        }
+        return null;
+    }
+
+    // only applicable for index tree file
+    // cursor over the (key, block id) entries with keys between low and high, null bounds are open
+    public <T> IndexCursor<T> scan_index(int file_id, T low, boolean low_inclusive, T high, boolean high_inclusive, boolean reverse){
+        if(file_id >= files.size()){
+            return null;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof BPlusTreeIndexFile){
+            return ((BPlusTreeIndexFile<T>) file).scan(low, low_inclusive, high, high_inclusive, reverse);
+        }
+        return null;
+    }
+
+    // only applicable for relational files
+    public int get_num_data_blocks(int file_id){
+        if(file_id >= files.size()){
+            return -1;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof File){
+            return ((File) file).get_num_data_blocks();
+        }
+        return -1;
+    }
+
+    // only applicable for relational files
+    // adds the record to a page with enough free space, returns its block id or -1
+    public int add_record(int file_id, byte[] record){
+        if(file_id >= files.size()){
+            return -1;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof File){
+            return ((File) file).add_record(record, 0, record.length);
+        }
+        return -1;
+    }
+
+    // only applicable for index tree file
+    public <T> boolean insert_index(int file_id, T key, int block_id){
+        if(file_id >= files.size()){
+            return false;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof BPlusTreeIndexFile){
+            ((BPlusTreeIndexFile<T>) file).insert(key, block_id);
+            return true;
+        }
+        return false;
+    }
+
+    // only applicable for index tree file
+    // the entry also keeps the slot of the record in block block_id
+    public <T> boolean insert_index(int file_id, T key, int block_id, int slot){
+        if(file_id >= files.size()){
+            return false;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof BPlusTreeIndexFile){
+            ((BPlusTreeIndexFile<T>) file).insert(key, block_id, slot);
+            return true;
+        }
+        return false;
+    }
+
     public void write_data(int file_id, int block_id, int offset, byte[] data){
         if(file_id >= files.size()){
             return;
@@ -83,6 +190,66 @@ public class DB {
         return false;
     }
 
+    // only applicable for index tree file
+    // removes the entry of key that points to block_id
+    public <T> boolean delete_from_index(int file_id, T key, int block_id){
+        if(file_id >= files.size()){
+            return false;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof BPlusTreeIndexFile){
+            return ((BPlusTreeIndexFile<T>) file).delete(key, block_id);
+        }
+        return false;
+    }
+
+    // only applicable for index tree file
+    // removes the entry of key that points to the record in slot of block block_id
+    public <T> boolean delete_from_index(int file_id, T key, int block_id, int slot){
+        if(file_id >= files.size()){
+            return false;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof BPlusTreeIndexFile){
+            return ((BPlusTreeIndexFile<T>) file).delete(key, block_id, slot);
+        }
+        return false;
+    }
+
+    // only applicable for index tree file
+    // points the entry of key for the record in slot of block block_id to new_slot
+    public <T> boolean update_index_slot(int file_id, T key, int block_id, int slot, int new_slot){
+        if(file_id >= files.size()){
+            return false;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof BPlusTreeIndexFile){
+            return ((BPlusTreeIndexFile<T>) file).update_slot(key, block_id, slot, new_slot);
+        }
+        return false;
+    }
+
+    // only applicable for relational files
+    public boolean delete_record(int file_id, int block_id, int slot){
+        if(file_id >= files.size()){
+            return false;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof File){
+            return ((File) file).delete_record(block_id, slot);
+        }
+        return false;
+    }
+
+    // writes back and closes all disk backed files
+    public void close(){
+        for(AbstractFile<? extends AbstractBlock> file : files){
+            if(file instanceof File){
+                ((File) file).close();
+            }
+        }
+    }
+
     public <T> ArrayList<T> return_bfs_index(int file_id){
         if(file_id >= files.size()){
             return null;
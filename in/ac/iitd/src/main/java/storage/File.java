@@ -1,98 +1,398 @@
 package storage;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
 /*
     * A File is simply a collection of blocks
     * The 0th block in the file is always the metadata block (contains schema)
     * For structure of schema block and data block, follow the assignment doc
+
+    * The metadata block also keeps the number of records and of data blocks of the file, as two
+    * 4 byte ints right after the column offsets of the schema (at 2 + 2 * num_columns)
+    * They are updated as records and blocks are added, so reading them is O(1)
+    * A disk backed file has a third int after them, LOADED once the load that wrote it finished, see mark_loaded
+
+    * A File either keeps its blocks in memory, or is backed by a PageFile on disk
+    * In the latter case blocks are pinned in a shared BufferPool while they are used
  */
 
 public class File extends AbstractFile<Block> {
 
+    /*
+        * A record id names a record by its data block and its slot in that block's slot array,
+        * packed into a long as block_id << 16 | slot. Slots of the records after a removed one
+        * move down, see delete_record, the holder of a record id has to follow them
+        * NO_SLOT stands for an unknown slot, the record is then somewhere in the block
+    */
+    public static final int NO_SLOT = 0xFFFF;
+
+    // load complete marker of the metadata block, "LOAD"
+    private static final int LOADED = 0x4C4F4144;
+
+    public static long record_id(int block_id, int slot) {
+        return ((long) block_id << 16) | (slot & 0xFFFF);
+    }
+
+    public static int record_block(long record_id) {
+        return (int) (record_id >>> 16);
+    }
+
+    public static int record_slot(long record_id) {
+        return (int) (record_id & 0xFFFF);
+    }
+
+    private final PageFile page_file;
+    private final BufferPool buffer_pool;
+
+    // built from the page headers on the first insert through add_record, see FreeSpaceMap
+    private FreeSpaceMap free_space;
+
+    public File() {
+        super();
+        this.page_file = null;
+        this.buffer_pool = null;
+    }
+
+    // disk backed file, existing pages of page_file are part of the file
+    public File(PageFile page_file, BufferPool buffer_pool) {
+        super(null);
+        this.page_file = page_file;
+        this.buffer_pool = buffer_pool;
+    }
+
+    public boolean is_paged() {
+        return page_file != null;
+    }
+
+    @Override
+    public int get_num_blocks() {
+        if(page_file == null){
+            return super.get_num_blocks();
+        }
+        return page_file.get_num_pages();
+    }
+
+    @Override
+    protected Block get_block(int block_id) {
+        if(page_file == null){
+            return super.get_block(block_id);
+        }
+        return buffer_pool.pin(page_file, block_id);
+    }
+
+    @Override
+    protected void release_block(int block_id, boolean dirty) {
+        if(page_file == null){
+            return;
+        }
+        buffer_pool.unpin(page_file, block_id, dirty);
+    }
+
+    @Override
+    public void add_block(Block block) {
+        if(get_num_blocks() > 0){
+            if(free_space != null){
+                free_space.update(get_num_blocks(), free_bytes(block));
+            }
+            update_counts(block.get_short(0), 1);
+        }
+        if(page_file == null){
+            super.add_block(block);
+            return;
+        }
+        try{
+            page_file.append_page(block.get_data());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public byte[] get_data(int block_id) {
+        if(page_file == null){
+            return super.get_data(block_id);
+        }
+        if(block_id >= get_num_blocks()){
+            return null;
+        }
+        // a frame is reused once unpinned, so hand out a copy taken while it is still pinned
+        // get_data(block_id, offset, length) copies before the unpin as well
+        byte[] data = get_block(block_id).get_data().clone();
+        release_block(block_id, false);
+        return data;
+    }
+
+    // disk backed blocks are served from a memory mapping of the page file
+    @Override
+    public ByteBuffer get_view(int block_id) {
+        if(page_file == null){
+            return super.get_view(block_id);
+        }
+        if(block_id >= get_num_blocks()){
+            return null;
+        }
+        // the mapping only sees what has been written back
+        buffer_pool.flush_page(page_file, block_id);
+        try{
+            return page_file.map_page(block_id);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // writes back dirty blocks to disk, no-op for in memory files
+    public void flush() {
+        if(page_file == null){
+            return;
+        }
+        buffer_pool.flush(page_file);
+        try{
+            page_file.sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void close() {
+        if(page_file == null){
+            return;
+        }
+        buffer_pool.evict_all(page_file);
+        try{
+            page_file.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     public boolean add_record_to_last_block(byte[] bytes){
+        return add_record_to_last_block(bytes, 0, bytes.length);
+    }
+
+    // adds the record in bytes[start, start + length), records encoded back to back in one
+    // buffer can be added without copying each into an array of its own
+    public boolean add_record_to_last_block(byte[] bytes, int start, int length){
 
         // if file has only one block - the metadata block, return false
-        if(blocks.size() == 1){
+        if(get_num_blocks() == 1){
             return false;
         }
 
-        Block lastBlock = blocks.get(blocks.size() - 1);
+        return add_record_to_block(get_num_blocks() - 1, bytes, start, length);
+    }
+
+    // contiguous free bytes of a data block, between its slot array and its lowest record
+    private static int free_bytes(Block block) {
+        int numRecords = block.get_short(0);
+        int offset = numRecords == 0 ? block.get_block_capacity() : block.get_short(2 + (numRecords - 1) * 2);
+        int usedBytes = 2 + 2 * numRecords + (block.get_block_capacity() - offset);
+        return block.get_block_capacity() - usedBytes;
+    }
+
+    private boolean add_record_to_block(int blockId, byte[] bytes, int start, int length){
+
+        Block block = get_block(blockId);
 
         // first 2 bytes in this block are the number of records in the block
-        byte[] numRecordsBytes = lastBlock.get_data(0, 2);
-        int numRecords = (numRecordsBytes[0] << 8) | (numRecordsBytes[1] & 0xFF);
+        int numRecords = block.get_short(0);
 
         // read the offset of the last record in the block
-        byte[] offsetBytes = lastBlock.get_data(2 + (numRecords - 1) * 2, 2);
-        int offset = (offsetBytes[0] << 8) | (offsetBytes[1] & 0xFF);
+        int offset = numRecords == 0 ? block.get_block_capacity() : block.get_short(2 + (numRecords - 1) * 2);
 
-        int usedBytes = 2 + 2 * numRecords + (lastBlock.get_block_capacity() - offset);
         // calculate length of free bytes in the block
-        int freeBytes = lastBlock.get_block_capacity() - usedBytes;
+        int freeBytes = free_bytes(block);
 
         // if the record is larger than the free bytes in the block, return false
-        if(bytes.length + 2 > freeBytes){
+        if(length + 2 > freeBytes){
+            release_block(blockId, false);
             return false;
         }
 
         // add the record to the block
-        int new_offset = offset - bytes.length;
+        int new_offset = offset - length;
 
-        // convert the new offset to 2 bytes
-        byte[] new_offset_bytes = new byte[2];
-        new_offset_bytes[0] = (byte) (new_offset >> 8);
-        new_offset_bytes[1] = (byte) new_offset;
-        lastBlock.write_data(2 + 2 * numRecords, new_offset_bytes);
-        lastBlock.write_data(new_offset, bytes);
+        block.write_short(2 + 2 * numRecords, new_offset);
+        block.write_data(new_offset, bytes, start, length);
 
         numRecords++;
-        byte[] new_num_records_bytes = new byte[2];
-        new_num_records_bytes[0] = (byte) (numRecords >> 8);
-        new_num_records_bytes[1] = (byte) numRecords;
-        lastBlock.write_data(0, new_num_records_bytes);
+        block.write_short(0, numRecords);
+        update_counts(1, 0);
 
+        if(free_space != null){
+            free_space.update(blockId, freeBytes - length - 2);
+        }
+        release_block(blockId, true);
         return true;
     }
 
     public boolean add_record_to_new_block(byte[] bytes){
-        
-        if(blocks.isEmpty()){
+        return add_record_to_new_block(bytes, 0, bytes.length);
+    }
+
+    public boolean add_record_to_new_block(byte[] bytes, int start, int length){
+
+        if(get_num_blocks() == 0){
             return false;
         } // sanity check
 
-        if(bytes.length + 4 > blocks.get(0).get_block_capacity()){
+        if(length + 4 > AbstractBlock.block_capacity){
             return false;
         } // sanity check
 
-        // create a new block, 
+        // create a new block,
         Block newBlock = new Block();
 
         // write 1 to first 2 bytes
-        byte[] numRecordsBytes = new byte[2];
-        numRecordsBytes[0] = 0;
-        numRecordsBytes[1] = 1;
-        newBlock.write_data(0, numRecordsBytes);
-
-        int offset = newBlock.get_block_capacity() - bytes.length;
-        // convert the offset to 2 bytes
-        byte[] offsetBytes = new byte[2];
-        offsetBytes[0] = (byte) (offset >> 8);
-        offsetBytes[1] = (byte) offset;
-        newBlock.write_data(2, offsetBytes);
-        newBlock.write_data(offset, bytes);
-        blocks.add(newBlock);
+        newBlock.write_short(0, 1);
+
+        int offset = newBlock.get_block_capacity() - length;
+        newBlock.write_short(2, offset);
+        newBlock.write_data(offset, bytes, start, length);
+        add_block(newBlock);
         return true;
     }
 
-    public int get_num_records(){
-        if(blocks.isEmpty()){
+    /*
+        * Removes the slot-th record of a data block and compacts the block in place
+        * Records are packed from the end of the block in slot order, a record ends where the one
+        * before it starts, so the records after the removed one move up by its length and their
+        * slots shift down by one. Nothing is left behind that readers would have to skip
+        * Returns false if there is no such record
+    */
+    public boolean delete_record(int block_id, int slot){
+        if(block_id <= 0 || block_id >= get_num_blocks()){
+            return false;
+        }
+        Block block = get_block(block_id);
+        int numRecords = block.get_short(0);
+        if(slot < 0 || slot >= numRecords){
+            release_block(block_id, false);
+            return false;
+        }
+        int start = block.get_short(2 + 2 * slot);
+        int end = slot == 0 ? block.get_block_capacity() : block.get_short(2 + 2 * (slot - 1));
+        int length = end - start;
+        int lowest = block.get_short(2 + 2 * (numRecords - 1));
+
+        block.move_data(lowest, lowest + length, start - lowest);
+        block.write_data(lowest, new byte[length]);
+        for(int j = slot + 1; j < numRecords; j++){
+            block.write_short(2 + 2 * (j - 1), block.get_short(2 + 2 * j) + length);
+        }
+        block.write_short(2 + 2 * (numRecords - 1), 0);
+        block.write_short(0, numRecords - 1);
+
+        if(free_space != null){
+            free_space.update(block_id, free_bytes(block));
+        }
+        release_block(block_id, true);
+        update_counts(-1, 0);
+        return true;
+    }
+
+    private FreeSpaceMap get_free_space_map() {
+        if(free_space == null){
+            free_space = new FreeSpaceMap(AbstractBlock.block_capacity);
+            for(int i = 1; i < get_num_blocks(); i++){
+                free_space.update(i, free_bytes(get_block(i)));
+                release_block(i, false);
+            }
+        }
+        return free_space;
+    }
+
+    /*
+        * Adds the record in bytes[start, start + length) to a page with enough free space, found
+        * through the free space map, and only opens a new page when no page has room
+        * Returns the block id the record went to, -1 if it can not fit in any page
+    */
+    public int add_record(byte[] bytes, int start, int length){
+        if(get_num_blocks() == 0 || length + 4 > AbstractBlock.block_capacity){
             return -1;
         }
-        int numRecords = 0;
-        for(int i = 1; i < blocks.size(); i++){
-            byte[] numRecordsBytes = blocks.get(i).get_data(0, 2);
-            numRecords += (numRecordsBytes[0] << 8) | (numRecordsBytes[1] & 0xFF);
+        FreeSpaceMap map = get_free_space_map();
+        int blockId = map.find(length + 2);
+        if(blockId != -1 && add_record_to_block(blockId, bytes, start, length)){
+            return blockId;
         }
+        add_record_to_new_block(bytes, start, length);
+        return get_num_blocks() - 1;
+    }
+
+    // has to be called after records of a data block are removed or moved outside of add_record
+    public void update_free_space(int block_id){
+        if(free_space == null || block_id <= 0 || block_id >= get_num_blocks()){
+            return;
+        }
+        free_space.update(block_id, free_bytes(get_block(block_id)));
+        release_block(block_id, false);
+    }
+
+    // location of the counts in the metadata block
+    // the schema writes its number of columns little endian, the counts use the block accessors
+    private static int counts_offset(Block metadata) {
+        int numColumns = Short.reverseBytes((short) metadata.get_short(0)) & 0xFFFF;
+        return 2 + 2 * numColumns;
+    }
+
+    // adds to the record and data block counts kept in the metadata block
+    // also used when records are removed, with a negative records
+    public void update_counts(int records, int blocks){
+        if(get_num_blocks() == 0 || (records == 0 && blocks == 0)){
+            return;
+        }
+        Block metadata = get_block(0);
+        int offset = counts_offset(metadata);
+        metadata.write_int(offset, metadata.get_int(offset) + records);
+        metadata.write_int(offset + 4, metadata.get_int(offset + 4) + blocks);
+        release_block(0, true);
+    }
+
+    // marks a disk backed file as completely loaded, its other blocks have to be flushed already
+    // so the marker can not reach the disk before the records it vouches for
+    // in memory files do not outlive their load and are left as they are
+    public void mark_loaded(){
+        if(page_file == null || get_num_blocks() == 0){
+            return;
+        }
+        Block metadata = get_block(0);
+        metadata.write_int(counts_offset(metadata) + 8, LOADED);
+        release_block(0, true);
+        flush();
+    }
+
+    // false for a page file left behind by a load that did not finish
+    public boolean is_loaded(){
+        if(get_num_blocks() == 0){
+            return false;
+        }
+        Block metadata = get_block(0);
+        boolean loaded = metadata.get_int(counts_offset(metadata) + 8) == LOADED;
+        release_block(0, false);
+        return loaded;
+    }
+
+    public int get_num_records(){
+        if(get_num_blocks() == 0){
+            return -1;
+        }
+        Block metadata = get_block(0);
+        int numRecords = metadata.get_int(counts_offset(metadata));
+        release_block(0, false);
         return numRecords;
     }
-    
+
+    // number of data blocks, the metadata block is not counted
+    public int get_num_data_blocks(){
+        if(get_num_blocks() == 0){
+            return -1;
+        }
+        Block metadata = get_block(0);
+        int numBlocks = metadata.get_int(counts_offset(metadata) + 4);
+        release_block(0, false);
+        return numBlocks;
+    }
+
 }
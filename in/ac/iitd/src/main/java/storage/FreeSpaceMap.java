@@ -0,0 +1,107 @@
+package storage;
+
+import java.util.Arrays;
+
+/*
+    * In memory free space map of a relational File
+    * Tracks the contiguous free bytes of each data page - between the end of its slot array and
+    * its lowest record - and keeps pages in buckets of bucket_size bytes of free space
+
+    * A page in bucket b has at least b * bucket_size free bytes, so a record needing n bytes fits
+    * in any page of bucket ceil(n / bucket_size) or above. Finding a page looks at a fixed number
+    * of buckets and removing a page from its bucket swaps it with the last one, both are O(1)
+ */
+public class FreeSpaceMap {
+
+    private static final int bucket_size = 128;
+
+    // free bytes, bucket and position in the bucket of each page, -1 if the page is not tracked
+    private int[] free_bytes;
+    private int[] bucket_of;
+    private int[] position_of;
+
+    private final int[][] buckets;
+    private final int[] bucket_lengths;
+
+    public FreeSpaceMap(int block_capacity) {
+        int num_buckets = block_capacity / bucket_size + 1;
+        buckets = new int[num_buckets][];
+        bucket_lengths = new int[num_buckets];
+        for(int b = 0; b < num_buckets; b++){
+            buckets[b] = new int[8];
+        }
+        free_bytes = new int[16];
+        bucket_of = new int[16];
+        position_of = new int[16];
+        Arrays.fill(bucket_of, -1);
+    }
+
+    private void ensure_page(int block_id) {
+        if(block_id < free_bytes.length){
+            return;
+        }
+        int length = Math.max(block_id + 1, 2 * free_bytes.length);
+        int old_length = free_bytes.length;
+        free_bytes = Arrays.copyOf(free_bytes, length);
+        bucket_of = Arrays.copyOf(bucket_of, length);
+        position_of = Arrays.copyOf(position_of, length);
+        Arrays.fill(bucket_of, old_length, length, -1);
+    }
+
+    private void remove(int block_id) {
+        int bucket = bucket_of[block_id];
+        if(bucket == -1){
+            return;
+        }
+        int position = position_of[block_id];
+        int last = buckets[bucket][--bucket_lengths[bucket]];
+        buckets[bucket][position] = last;
+        position_of[last] = position;
+        bucket_of[block_id] = -1;
+    }
+
+    // records that block_id now has free free bytes
+    public void update(int block_id, int free) {
+        ensure_page(block_id);
+        remove(block_id);
+        int bucket = Math.min(free / bucket_size, buckets.length - 1);
+        if(bucket_lengths[bucket] == buckets[bucket].length){
+            buckets[bucket] = Arrays.copyOf(buckets[bucket], 2 * bucket_lengths[bucket]);
+        }
+        buckets[bucket][bucket_lengths[bucket]] = block_id;
+        position_of[block_id] = bucket_lengths[bucket]++;
+        bucket_of[block_id] = bucket;
+        free_bytes[block_id] = free;
+    }
+
+    public int get_free_bytes(int block_id) {
+        if(block_id >= free_bytes.length || bucket_of[block_id] == -1){
+            return -1;
+        }
+        return free_bytes[block_id];
+    }
+
+    /*
+        * A page with at least needed free bytes, -1 if there is none
+        * Takes a page from the smallest bucket that is sure to fit, so that pages with a lot
+        * of room are kept for large records
+    */
+    public int find(int needed) {
+        int first = (needed + bucket_size - 1) / bucket_size;
+        for(int b = first; b < buckets.length; b++){
+            if(bucket_lengths[b] > 0){
+                return buckets[b][bucket_lengths[b] - 1];
+            }
+        }
+        // the bucket below can still hold a page that fits, only its last few pages are tried
+        int below = first - 1;
+        if(below >= 0 && below < buckets.length){
+            for(int i = bucket_lengths[below] - 1; i >= 0 && i >= bucket_lengths[below] - 4; i--){
+                if(free_bytes[buckets[below][i]] >= needed){
+                    return buckets[below][i];
+                }
+            }
+        }
+        return -1;
+    }
+}
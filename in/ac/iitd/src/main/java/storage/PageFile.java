@@ -0,0 +1,106 @@
+package storage;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+    * A PageFile is a file on disk split into fixed size pages
+    * Page i starts at byte i * page_size, a page has the same size as a block
+    * Pages are only ever appended, never removed
+ */
+public class PageFile {
+
+    public static final int page_size = AbstractBlock.block_capacity;
+
+    private final String path;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private int num_pages;
+
+    // read only mapping of the first mapped_pages pages, remapped when the file grows
+    private MappedByteBuffer mapping;
+    private int mapped_pages;
+
+    public PageFile(String path) throws IOException {
+        this.path = path;
+        this.raf = new RandomAccessFile(path, "rw");
+        this.channel = raf.getChannel();
+        this.num_pages = (int) (channel.size() / page_size);
+    }
+
+    public String get_path() {
+        return path;
+    }
+
+    public synchronized int get_num_pages() {
+        return num_pages;
+    }
+
+    // reads the page into dst, dst should be page_size long
+    public synchronized void read_page(int page_id, byte[] dst) throws IOException {
+        if(page_id >= num_pages){
+            throw new IOException("Page " + page_id + " out of range in " + path);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(dst, 0, page_size);
+        long position = (long) page_id * page_size;
+        while(buffer.hasRemaining()){
+            if(channel.read(buffer, position + buffer.position()) < 0){
+                break;
+            }
+        }
+    }
+
+    public synchronized void write_page(int page_id, byte[] src) throws IOException {
+        if(page_id > num_pages){
+            throw new IOException("Page " + page_id + " out of range in " + path);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(src, 0, page_size);
+        long position = (long) page_id * page_size;
+        while(buffer.hasRemaining()){
+            channel.write(buffer, position + buffer.position());
+        }
+        if(page_id == num_pages){
+            num_pages++;
+        }
+    }
+
+    // writes src as a new page at the end of the file, returns its page id
+    public synchronized int append_page(byte[] src) throws IOException {
+        int page_id = num_pages;
+        write_page(page_id, src);
+        return page_id;
+    }
+
+    // read only view of the page backed by the mapped file, nothing is copied
+    // writes through write_page are visible in views of the same page
+    public synchronized ByteBuffer map_page(int page_id) throws IOException {
+        if(page_id >= num_pages){
+            throw new IOException("Page " + page_id + " out of range in " + path);
+        }
+        if((long) num_pages * page_size > Integer.MAX_VALUE){
+            // a single mapping cannot cover more than 2 GB
+            return channel.map(FileChannel.MapMode.READ_ONLY, (long) page_id * page_size, page_size);
+        }
+        if(mapping == null || mapped_pages < num_pages){
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) num_pages * page_size);
+            mapped_pages = num_pages;
+        }
+        ByteBuffer view = mapping.duplicate();
+        view.position(page_id * page_size);
+        view.limit(page_id * page_size + page_size);
+        return view.slice();
+    }
+
+    public synchronized void sync() throws IOException {
+        channel.force(false);
+    }
+
+    public synchronized void close() throws IOException {
+        mapping = null;
+        channel.close();
+        raf.close();
+    }
+}
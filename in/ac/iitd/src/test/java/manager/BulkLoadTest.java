@@ -0,0 +1,90 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import index.bplusTree.BPlusTreeIndexFile;
+import index.bplusTree.BlockNode;
+import index.bplusTree.InternalNode;
+import index.bplusTree.LeafNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class BulkLoadTest {
+
+    private int getRootId(BPlusTreeIndexFile<Integer> tree) {
+        return tree.return_blocks().get(0).get_short(2);
+    }
+
+    // returns the depth of the leaves below id, fails if they are not all at the same depth
+    private int checkNode(BPlusTreeIndexFile<Integer> tree, int id, boolean isRoot) {
+        BlockNode node = tree.return_blocks().get(id);
+        int order = tree.getOrder();
+        if(node instanceof LeafNode) {
+            assertTrue(node.getNumKeys() <= order - 1);
+            assertTrue(isRoot || node.getNumKeys() >= (order - 1) / 2);
+            return 0;
+        }
+        int[] children = ((InternalNode<Integer>) node).getChildren();
+        assertTrue(children.length <= order);
+        assertTrue(children.length >= 2);
+        int depth = checkNode(tree, children[0], false);
+        for(int i = 1; i < children.length; i++) {
+            assertEquals(depth, checkNode(tree, children[i], false));
+        }
+        return depth + 1;
+    }
+
+    private void testBulkLoad(int n, int order, double fill_factor) {
+        List<Integer> keys = new ArrayList<>();
+        List<Integer> blockIds = new ArrayList<>();
+        for(int i = 0; i < n; i++) {
+            keys.add(i / 2); // every key twice
+        }
+        Collections.shuffle(keys, new Random(362));
+        for(int i = 0; i < n; i++) {
+            blockIds.add(keys.get(i) + 1);
+        }
+
+        BPlusTreeIndexFile<Integer> tree = new BPlusTreeIndexFile<>(order, Integer.class);
+        tree.bulk_load(keys, blockIds, fill_factor);
+
+        checkNode(tree, getRootId(tree), true);
+
+        // walk the leaf chain from the leftmost leaf
+        int id = getRootId(tree);
+        while(!(tree.return_blocks().get(id) instanceof LeafNode)) {
+            id = ((InternalNode<Integer>) tree.return_blocks().get(id)).getChildren()[0];
+        }
+        List<Integer> leafKeys = new ArrayList<>();
+        int prev = 0;
+        while(id != 0) {
+            LeafNode<Integer> leaf = (LeafNode<Integer>) tree.return_blocks().get(id);
+            assertEquals(prev, leaf.prev());
+            Object[] nodeKeys = leaf.getKeys();
+            int[] nodeBlockIds = leaf.getBlockIds();
+            for(int i = 0; i < nodeKeys.length; i++) {
+                assertEquals((Integer) nodeKeys[i] + 1, nodeBlockIds[i]);
+                leafKeys.add((Integer) nodeKeys[i]);
+            }
+            prev = id;
+            id = leaf.next();
+        }
+        assertEquals(n, leafKeys.size());
+        for(int i = 0; i < n; i++) {
+            assertEquals(i / 2, (int) leafKeys.get(i));
+        }
+    }
+
+    @Test
+    public void test_bulk_load_full_leaves() {
+        testBulkLoad(2000, 10, 1.0);
+    }
+
+    @Test
+    public void test_bulk_load_partial_leaves() {
+        testBulkLoad(2000, 100, 0.7);
+        testBulkLoad(7, 3, 0.5);
+    }
+}
@@ -0,0 +1,173 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import index.bplusTree.BPlusTreeIndexFile;
+import index.bplusTree.IndexCursor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ConcurrentTreeTest {
+
+    private static final int THREADS = 4;
+    private static final int KEYS = 2000;
+
+    @Test
+    public void test_concurrent_insert_search() throws Exception {
+        BPlusTreeIndexFile<Integer> tree = new BPlusTreeIndexFile<>(5, Integer.class);
+        ExecutorService pool = Executors.newFixedThreadPool(2 * THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        // writers insert interleaved keys so that they meet in the same leaves
+        for(int t = 0; t < THREADS; t++) {
+            final int first = t;
+            futures.add(pool.submit(() -> {
+                for(int k = first; k < KEYS; k += THREADS) {
+                    tree.insert(k, k);
+                    assertNotEquals(-1, tree.search(k));
+                }
+            }));
+        }
+        // readers run alongside, a key is either not there yet or found in a leaf that holds it
+        for(int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(() -> {
+                for(int k = 0; k < KEYS; k++) {
+                    int id = tree.search(k);
+                    assertTrue(id == -1 || id > 0);
+                    tree.search_range(k, true, k + 10, true);
+                }
+            }));
+        }
+        for(Future<?> future : futures) {
+            future.get();
+        }
+        for(int k = 0; k < KEYS; k++) {
+            assertNotEquals(-1, tree.search(k));
+        }
+        List<Integer> all = tree.search_range(null, false, null, false);
+        assertEquals(KEYS, all.size());
+        for(int k = 0; k < KEYS; k++) {
+            assertEquals(k, (int) all.get(k));
+        }
+
+        // half of the keys go again while the other half is read
+        futures.clear();
+        for(int t = 0; t < THREADS; t++) {
+            final int first = t;
+            futures.add(pool.submit(() -> {
+                for(int k = 2 * first; k < KEYS; k += 2 * THREADS) {
+                    assertTrue(tree.delete(k, k));
+                    assertNotEquals(-1, tree.search(k + 1));
+                }
+            }));
+        }
+        for(Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+        all = tree.search_range(null, false, null, false);
+        assertEquals(KEYS / 2, all.size());
+        for(int k = 0; k < KEYS; k++) {
+            assertEquals(k % 2 == 0, tree.search(k) == -1);
+        }
+    }
+
+    @Test
+    public void test_blink_lookups_during_inserts() throws Exception {
+        BPlusTreeIndexFile<Integer> tree = new BPlusTreeIndexFile<>(4, Integer.class, true);
+        // even keys are there from the start, odd ones arrive while they are looked up
+        for(int k = 0; k < KEYS; k += 2) {
+            tree.insert(k, k);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(2 * THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for(int t = 0; t < THREADS; t++) {
+            final int first = t;
+            futures.add(pool.submit(() -> {
+                for(int k = 2 * first + 1; k < KEYS; k += 2 * THREADS) {
+                    tree.insert(k, k);
+                }
+            }));
+            futures.add(pool.submit(() -> {
+                // a lookup racing with the split of its leaf moves right instead of missing
+                for(int round = 0; round < 3; round++) {
+                    for(int k = 0; k < KEYS; k += 2) {
+                        assertNotEquals(-1, tree.search(k));
+                    }
+                }
+            }));
+        }
+        for(Future<?> future : futures) {
+            future.get();
+        }
+        for(int k = 0; k < KEYS; k++) {
+            assertNotEquals(-1, tree.search(k));
+        }
+        assertEquals(-1, tree.search(KEYS));
+
+        // deletes leave the leaves in place, empty ones are skipped
+        for(int k = 0; k < KEYS - 10; k++) {
+            assertTrue(tree.delete(k));
+        }
+        for(int k = 0; k < KEYS; k++) {
+            assertEquals(k < KEYS - 10, tree.search(k) == -1);
+        }
+        assertEquals(10, tree.search_range(null, false, null, false).size());
+        pool.shutdown();
+    }
+
+    // the keys share a long prefix, so leaves and internal nodes change their prefix as they split
+    private static String key(int k) {
+        return String.format("customer-%c-%05d", k % 3 == 0 ? 'a' : '\u00e9', k);
+    }
+
+    @Test
+    public void test_blink_string_lookups_during_inserts() throws Exception {
+        BPlusTreeIndexFile<String> tree = new BPlusTreeIndexFile<>(4, String.class, true);
+        for(int k = 0; k < KEYS; k += 2) {
+            tree.insert(key(k), k);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(2 * THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for(int t = 0; t < THREADS; t++) {
+            final int first = t;
+            futures.add(pool.submit(() -> {
+                for(int k = 2 * first + 1; k < KEYS; k += 2 * THREADS) {
+                    tree.insert(key(k), k);
+                }
+            }));
+            futures.add(pool.submit(() -> {
+                // lookups compare against prefixes that writers are changing
+                for(int round = 0; round < 3; round++) {
+                    for(int k = 0; k < KEYS; k += 2) {
+                        assertNotEquals(-1, tree.search(key(k)));
+                    }
+                }
+            }));
+        }
+        for(Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+        for(int k = 0; k < KEYS; k++) {
+            assertNotEquals(-1, tree.search(key(k)));
+        }
+        assertEquals(-1, tree.search(key(KEYS)));
+
+        // every stored key still reads back whole, next to the entry it went in with
+        IndexCursor<String> cursor = tree.scan(null, false, null, false);
+        String previous = null;
+        int count = 0;
+        while(cursor.hasNext()) {
+            Map.Entry<String, Integer> entry = cursor.next();
+            assertEquals(key(entry.getValue()), entry.getKey());
+            assertTrue(previous == null || previous.compareTo(entry.getKey()) < 0);
+            previous = entry.getKey();
+            count++;
+        }
+        assertEquals(KEYS, count);
+    }
+}
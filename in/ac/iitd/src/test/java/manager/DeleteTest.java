@@ -0,0 +1,90 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import index.bplusTree.BPlusTreeIndexFile;
+import manager.StorageManager;
+import manager.TableSchema;
+
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.sql.type.SqlTypeName;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DeleteTest {
+
+    @Test
+    public void test_tree_delete_rebalance() {
+        BPlusTreeIndexFile<Integer> tree = new BPlusTreeIndexFile<>(3, Integer.class);
+        for(int k = 0; k < 50; k++) {
+            tree.insert(k, k);
+        }
+        // every other key first, then the rest, leaves borrow and merge all the way up
+        for(int k = 0; k < 50; k += 2) {
+            assertTrue(tree.delete(k));
+        }
+        for(int k = 0; k < 50; k++) {
+            assertEquals(k % 2 == 0, tree.search(k) == -1);
+        }
+        for(int k = 1; k < 49; k += 2) {
+            assertTrue(tree.delete(k, k));
+            assertFalse(tree.delete(k, k));
+        }
+        assertEquals(-1, tree.search(1));
+        assertNotEquals(-1, tree.search(49));
+        ArrayList<Integer> bfs = tree.return_bfs();
+        assertEquals(1, bfs.size());
+        assertEquals(49, (int) bfs.get(0));
+    }
+
+    @Test
+    public void test_delete_rows() {
+        RelDataTypeFactory typeFactory = new JavaTypeFactoryImpl();
+        List<RelDataType> types = new ArrayList<>();
+        // actor_id:int,first_name,last_name,last_update
+        types.add(typeFactory.createSqlType(SqlTypeName.INTEGER));
+        for(int i = 0; i < 3; i++) {
+            types.add(typeFactory.createSqlType(SqlTypeName.VARCHAR));
+        }
+        StorageManager storage_manager = new StorageManager();
+        storage_manager.loadFile("actor.csv", types);
+        storage_manager.create_index("actor", "actor_id", 10);
+        TableSchema schema = storage_manager.get_schema("actor");
+        int num_records = storage_manager.get_num_records("actor");
+        RexBuilder rexBuilder = new RexBuilder(typeFactory);
+
+        assertTrue(storage_manager.delete("actor", "actor_id", rexBuilder.makeExactLiteral(BigDecimal.valueOf(5))));
+        assertFalse(storage_manager.delete("actor", "actor_id", rexBuilder.makeExactLiteral(BigDecimal.valueOf(5))));
+        assertTrue(storage_manager.search_range("actor", "actor_id", 5, true, 5, true).isEmpty());
+
+        // no index on last_name, every block is looked at
+        int last_name = schema.get_position("last_name");
+        int guiness = 0;
+        for(int block_id = 1; storage_manager.get_records_from_block("actor", block_id) != null; block_id++) {
+            for(Object[] record : storage_manager.get_records_from_block("actor", block_id)) {
+                if("Guiness".equals(record[last_name])) {
+                    guiness++;
+                }
+            }
+        }
+        assertTrue(guiness > 0);
+        assertTrue(storage_manager.delete("actor", "last_name", rexBuilder.makeLiteral("Guiness")));
+        assertEquals(num_records - 1 - guiness, storage_manager.get_num_records("actor"));
+
+        int remaining = 0;
+        for(int block_id = 1; storage_manager.get_records_from_block("actor", block_id) != null; block_id++) {
+            for(Object[] record : storage_manager.get_records_from_block("actor", block_id)) {
+                assertNotEquals(5, record[schema.get_position("actor_id")]);
+                assertNotEquals("Guiness", record[last_name]);
+                assertEquals(block_id, storage_manager.search_range("actor", "actor_id",
+                        record[schema.get_position("actor_id")], true, record[schema.get_position("actor_id")], true).get(0).intValue());
+                remaining++;
+            }
+        }
+        assertEquals(num_records - 1 - guiness, remaining);
+    }
+}
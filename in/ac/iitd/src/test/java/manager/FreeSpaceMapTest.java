@@ -0,0 +1,78 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import manager.StorageManager;
+import manager.TableSchema;
+import storage.FreeSpaceMap;
+
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.sql.type.SqlTypeName;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FreeSpaceMapTest {
+
+    @Test
+    public void test_find_page() {
+        FreeSpaceMap map = new FreeSpaceMap(4096);
+        assertEquals(-1, map.find(10));
+        map.update(1, 50);
+        map.update(2, 1000);
+        map.update(3, 300);
+        assertEquals(3, map.find(200));
+        assertEquals(2, map.find(301));
+        map.update(2, 0);
+        assertEquals(-1, map.find(301));
+        assertEquals(0, map.get_free_bytes(2));
+        // pages that only may fit are looked at once no page is sure to
+        map.update(3, 20);
+        assertEquals(1, map.find(40));
+        assertEquals(-1, map.find(60));
+    }
+
+    @Test
+    public void test_insert_reuses_pages() {
+        RelDataTypeFactory typeFactory = new JavaTypeFactoryImpl();
+        List<RelDataType> types = new ArrayList<>();
+        // actor_id:int,first_name,last_name,last_update
+        types.add(typeFactory.createSqlType(SqlTypeName.INTEGER));
+        for(int i = 0; i < 3; i++) {
+            types.add(typeFactory.createSqlType(SqlTypeName.VARCHAR));
+        }
+        StorageManager storage_manager = new StorageManager();
+        storage_manager.loadFile("actor.csv", types);
+        storage_manager.create_index("actor", "actor_id", 10);
+        TableSchema schema = storage_manager.get_schema("actor");
+
+        int num_blocks = 1;
+        int num_records = 0;
+        List<Object[]> block;
+        while((block = storage_manager.get_records_from_block("actor", num_blocks)) != null) {
+            num_records += block.size();
+            num_blocks++;
+        }
+        assertEquals(num_records, storage_manager.get_num_records("actor"));
+        assertEquals(num_blocks - 1, storage_manager.get_num_data_blocks("actor"));
+        // short rows fit in the free space left at the end of the loaded pages
+        for(int i = 0; i < 10; i++) {
+            Object[] row = new Object[schema.get_num_columns()];
+            row[schema.get_position("actor_id")] = 1000 + i;
+            row[schema.get_position("first_name")] = "A";
+            row[schema.get_position("last_name")] = "B";
+            row[schema.get_position("last_update")] = "2006-02-15";
+            int block_id = storage_manager.insert_record("actor", row);
+            assertTrue(block_id > 0 && block_id < num_blocks);
+
+            List<Object[]> records = storage_manager.get_records_from_block("actor", block_id);
+            assertArrayEquals(row, records.get(records.size() - 1));
+        }
+        assertNull(storage_manager.get_records_from_block("actor", num_blocks));
+        assertEquals(num_records + 10, storage_manager.get_num_records("actor"));
+        assertEquals(num_blocks - 1, storage_manager.get_num_data_blocks("actor"));
+        List<Integer> block_ids = storage_manager.search_range("actor", "actor_id", 1000, true, 1009, true);
+        assertFalse(block_ids.isEmpty());
+    }
+}
@@ -0,0 +1,111 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import index.bplusTree.BPlusTreeIndexFile;
+import index.bplusTree.DoubleBPlusTreeIndexFile;
+import index.bplusTree.IntBPlusTreeIndexFile;
+import manager.StorageManager;
+
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.sql.type.SqlTypeName;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+public class IndexCatalogTest {
+
+    @Test
+    public void test_several_indexes() {
+        RelDataTypeFactory typeFactory = new JavaTypeFactoryImpl();
+        List<RelDataType> types = new ArrayList<>();
+        // actor_id:int,first_name,last_name,last_update
+        types.add(typeFactory.createSqlType(SqlTypeName.INTEGER));
+        for(int i = 0; i < 3; i++) {
+            types.add(typeFactory.createSqlType(SqlTypeName.VARCHAR));
+        }
+        StorageManager storage_manager = new StorageManager();
+        storage_manager.loadFile("actor.csv", types);
+        assertTrue(storage_manager.create_index("actor", "actor_id", 10));
+        assertTrue(storage_manager.create_index("actor", "last_name", 10));
+        assertNotSame(storage_manager.get_index("actor", "actor_id"), storage_manager.get_index("actor", "last_name"));
+        assertNull(storage_manager.get_index("actor", "first_name"));
+
+        // both indexes answer, the one built first is not replaced by the second
+        RexBuilder rexBuilder = new RexBuilder(typeFactory);
+        assertNotEquals(-1, storage_manager.search("actor", "actor_id", rexBuilder.makeExactLiteral(BigDecimal.valueOf(1))));
+        assertNotEquals(-1, storage_manager.search("actor", "last_name", rexBuilder.makeLiteral("Guiness")));
+        assertEquals(1, storage_manager.search_range("actor", "actor_id", 1, true, 1, true).size());
+        assertFalse(storage_manager.search_range("actor", "last_name", "Guiness", true, "Guiness", true).isEmpty());
+
+        // building an index again replaces the old tree
+        assertTrue(storage_manager.create_index("actor", "actor_id", 5));
+        assertEquals(1, storage_manager.search_range("actor", "actor_id", 1, true, 1, true).size());
+    }
+
+    @Test
+    public void test_create_indexes() {
+        RelDataTypeFactory typeFactory = new JavaTypeFactoryImpl();
+        List<RelDataType> types = new ArrayList<>();
+        // actor_id:int,first_name,last_name,last_update
+        types.add(typeFactory.createSqlType(SqlTypeName.INTEGER));
+        for(int i = 0; i < 3; i++) {
+            types.add(typeFactory.createSqlType(SqlTypeName.VARCHAR));
+        }
+        StorageManager storage_manager = new StorageManager();
+        storage_manager.loadFile("actor.csv", types);
+        assertFalse(storage_manager.create_indexes("actor", 10, "actor_id", "no_such_column"));
+        assertNull(storage_manager.get_index("actor", "actor_id"));
+
+        assertTrue(storage_manager.create_indexes("actor", 10, "actor_id", "first_name", "last_name"));
+        assertTrue(storage_manager.create_indexes("actor", 10, 0.7, "last_update"));
+        for(String column : new String[]{"actor_id", "first_name", "last_name", "last_update"}) {
+            assertNotNull(storage_manager.get_index("actor", column));
+        }
+        assertEquals(1, storage_manager.search_range("actor", "actor_id", 7, true, 7, true).size());
+        assertFalse(storage_manager.search_range("actor", "first_name", "Penelope", true, "Penelope", true).isEmpty());
+        assertFalse(storage_manager.search_range("actor", "last_name", "Guiness", true, "Guiness", true).isEmpty());
+        assertFalse(storage_manager.search_range("actor", "last_update", null, false, null, false).isEmpty());
+    }
+
+    @Test
+    public void test_primitive_trees() {
+        RelDataTypeFactory typeFactory = new JavaTypeFactoryImpl();
+        List<RelDataType> types = new ArrayList<>();
+        // actor_id:int,first_name,last_name,last_update
+        types.add(typeFactory.createSqlType(SqlTypeName.INTEGER));
+        for(int i = 0; i < 3; i++) {
+            types.add(typeFactory.createSqlType(SqlTypeName.VARCHAR));
+        }
+        StorageManager storage_manager = new StorageManager();
+        storage_manager.loadFile("actor.csv", types);
+        assertTrue(storage_manager.create_indexes("actor", 10, "actor_id", "last_name"));
+        assertTrue(storage_manager.get_index("actor", "actor_id") instanceof IntBPlusTreeIndexFile);
+        assertFalse(storage_manager.get_index("actor", "last_name") instanceof IntBPlusTreeIndexFile);
+
+        IntBPlusTreeIndexFile ids = (IntBPlusTreeIndexFile) storage_manager.get_index("actor", "actor_id");
+        for(int id = 0; id <= 201; id++) {
+            assertEquals(ids.search(Integer.valueOf(id)), ids.search(id));
+            assertEquals(id >= 1 && id <= 200, ids.search(id) != -1);
+        }
+
+        // doubles keep the order of Double.compare, negative keys and duplicates included
+        DoubleBPlusTreeIndexFile tree = new DoubleBPlusTreeIndexFile(4);
+        BPlusTreeIndexFile<Double> generic = new BPlusTreeIndexFile<>(4, Double.class);
+        List<Double> keys = new ArrayList<>();
+        List<Integer> block_ids = new ArrayList<>();
+        for(int i = 0; i < 100; i++) {
+            keys.add((i * 37 % 50 - 25) / 4.0);
+            block_ids.add(i + 1);
+        }
+        tree.bulk_load(keys, block_ids, 1.0);
+        generic.bulk_load(keys, block_ids, 1.0);
+        assertEquals(generic.search_range(null, false, null, false), tree.search_range(null, false, null, false));
+        assertEquals(generic.search_range(-2.5, false, 3.0, true), tree.search_range(-2.5, false, 3.0, true));
+        assertNotEquals(-1, tree.search(-6.25));
+        assertEquals(-1, tree.search(-6.3));
+    }
+}
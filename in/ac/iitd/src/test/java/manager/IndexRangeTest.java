@@ -0,0 +1,82 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import index.bplusTree.BPlusTreeIndexFile;
+import index.bplusTree.IndexCursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class IndexRangeTest {
+
+    // block id of key k is k * 10 + copy, every key is inserted 3 times so copies span leaves
+    private BPlusTreeIndexFile<Integer> buildTree() {
+        BPlusTreeIndexFile<Integer> tree = new BPlusTreeIndexFile<>(3, Integer.class);
+        for(int copy = 0; copy < 3; copy++) {
+            for(int k = 0; k < 20; k++) {
+                tree.insert(k, k * 10 + copy);
+            }
+        }
+        return tree;
+    }
+
+    private List<Integer> expected(int low, boolean low_inclusive, int high, boolean high_inclusive) {
+        List<Integer> ids = new ArrayList<>();
+        for(int k = 0; k < 20; k++) {
+            if((k > low || (low_inclusive && k == low)) && (k < high || (high_inclusive && k == high))) {
+                for(int copy = 0; copy < 3; copy++) {
+                    ids.add(k * 10 + copy);
+                }
+            }
+        }
+        return ids;
+    }
+
+    private void check(BPlusTreeIndexFile<Integer> tree, Integer low, boolean low_inclusive, Integer high, boolean high_inclusive) {
+        List<Integer> ids = tree.search_range(low, low_inclusive, high, high_inclusive);
+        List<Integer> sorted = new ArrayList<>(ids);
+        sorted.sort(null);
+        assertEquals(expected(low == null ? -1 : low, low_inclusive || low == null,
+                high == null ? 20 : high, high_inclusive || high == null), sorted);
+    }
+
+    @Test
+    public void test_search_range() {
+        BPlusTreeIndexFile<Integer> tree = buildTree();
+        for(int k = 0; k < 20; k++) {
+            assertNotEquals(-1, tree.search(k));
+            check(tree, k, true, k, true);
+            check(tree, k, false, null, false);
+            check(tree, k, true, null, false);
+            check(tree, null, false, k, false);
+            check(tree, null, false, k, true);
+        }
+        assertEquals(-1, tree.search(20));
+        assertTrue(tree.search_range(7, false, 7, true).isEmpty());
+    }
+
+    @Test
+    public void test_reverse_scan() {
+        BPlusTreeIndexFile<Integer> tree = buildTree();
+        for(int k = 0; k < 20; k++) {
+            List<Integer> keys = new ArrayList<>();
+            IndexCursor<Integer> cursor = tree.scan(null, false, k, k % 2 == 0, true);
+            int previous = Integer.MAX_VALUE;
+            while(cursor.hasNext()) {
+                int key = cursor.next().getKey();
+                assertTrue(key <= previous);
+                previous = key;
+                keys.add(key);
+            }
+            assertEquals(3 * (k % 2 == 0 ? k + 1 : k), keys.size());
+        }
+        IndexCursor<Integer> cursor = tree.scan(5, false, 8, false, true);
+        int count = 0;
+        while(cursor.hasNext()) {
+            int key = cursor.next().getKey();
+            assertTrue(key > 5 && key < 8);
+            count++;
+        }
+        assertEquals(6, count);
+    }
+}
@@ -0,0 +1,107 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import manager.StorageManager;
+import storage.PageFile;
+
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.sql.type.SqlTypeName;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PagedStorageTest {
+
+    // page files of a test go here, removed once the test is over
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // actor_id:int,first_name,last_name,last_update
+    private List<RelDataType> actorTypes() {
+        RelDataTypeFactory typeFactory = new JavaTypeFactoryImpl();
+        List<RelDataType> types = new ArrayList<>();
+        types.add(typeFactory.createSqlType(SqlTypeName.INTEGER));
+        types.add(typeFactory.createSqlType(SqlTypeName.VARCHAR));
+        types.add(typeFactory.createSqlType(SqlTypeName.VARCHAR));
+        types.add(typeFactory.createSqlType(SqlTypeName.VARCHAR));
+        return types;
+    }
+
+    private void assertSameBlocks(StorageManager expected, StorageManager actual) {
+        int block_id = 1;
+        List<Object[]> expectedRecords;
+        while((expectedRecords = expected.get_records_from_block("actor", block_id)) != null){
+            List<Object[]> actualRecords = actual.get_records_from_block("actor", block_id);
+            assertNotNull(actualRecords);
+            assertEquals(expectedRecords.size(), actualRecords.size());
+            for(int i = 0; i < expectedRecords.size(); i++){
+                assertArrayEquals(expectedRecords.get(i), actualRecords.get(i));
+            }
+            block_id++;
+        }
+        assertNull(actual.get_records_from_block("actor", block_id));
+    }
+
+    @Test
+    public void test_paged_table_matches_in_memory_and_survives_restart() throws Exception {
+        String dir = folder.newFolder("db362").getPath();
+
+        StorageManager inMemory = new StorageManager();
+        inMemory.loadFile("actor.csv", actorTypes());
+
+        // 2 frames, so reading the table has to evict pages
+        StorageManager paged = new StorageManager(dir, 2);
+        paged.loadFile("actor.csv", actorTypes());
+        assertSameBlocks(inMemory, paged);
+        paged.close();
+
+        StorageManager reopened = new StorageManager(dir, 2);
+        reopened.loadFile("actor.csv", actorTypes());
+        assertSameBlocks(inMemory, reopened);
+        reopened.close();
+    }
+
+    @Test
+    public void test_unfinished_load_is_rebuilt() throws Exception {
+        String dir = folder.newFolder("db362").getPath();
+
+        StorageManager inMemory = new StorageManager();
+        inMemory.loadFile("actor.csv", actorTypes());
+
+        // the schema block and the first data block of a load that stopped there
+        PageFile partial = new PageFile(dir + "/actor.db");
+        partial.append_page(inMemory.get_data_block("actor", 0));
+        partial.append_page(inMemory.get_data_block("actor", 1));
+        partial.close();
+
+        StorageManager paged = new StorageManager(dir, 2);
+        paged.loadFile("actor.csv", actorTypes());
+        assertSameBlocks(inMemory, paged);
+        assertEquals(inMemory.get_num_records("actor"), paged.get_num_records("actor"));
+        paged.close();
+
+        StorageManager reopened = new StorageManager(dir, 2);
+        reopened.loadFile("actor.csv", actorTypes());
+        assertSameBlocks(inMemory, reopened);
+        reopened.close();
+    }
+
+    @Test
+    public void test_failed_load_is_not_registered() throws Exception {
+        String dir = folder.newFolder("db362").getPath();
+
+        StorageManager paged = new StorageManager(dir, 2);
+        paged.loadFile("missing.csv", actorTypes());
+        assertFalse(paged.check_file_exists("missing"));
+        assertNull(paged.get_schema("missing"));
+        paged.close();
+
+        StorageManager inMemory = new StorageManager();
+        inMemory.loadFile("missing.csv", actorTypes());
+        assertFalse(inMemory.check_file_exists("missing"));
+    }
+}
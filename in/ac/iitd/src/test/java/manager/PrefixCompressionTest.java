@@ -0,0 +1,105 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import index.bplusTree.BPlusTreeIndexFile;
+import index.bplusTree.LeafNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class PrefixCompressionTest {
+
+    private static final int KEYS = 2000;
+
+    private String email(int i) {
+        return String.format("customer%05d@mail.example.com", i);
+    }
+
+    // every key is found, the leaves read back the keys in order and some leaf stores a shared prefix
+    private void checkTree(BPlusTreeIndexFile<String> tree, List<String> keys) {
+        for(String key : keys) {
+            assertNotEquals(-1, tree.search(key));
+        }
+        assertEquals(keys.size(), tree.search_range(null, false, null, false).size());
+        List<String> leafKeys = new ArrayList<>();
+        boolean compressed = false;
+        for(int id = tree.search(keys.get(0)); id != 0; ) {
+            LeafNode leaf = (LeafNode) tree.return_blocks().get(id);
+            for(Object key : leaf.getKeys()) {
+                leafKeys.add((String) key);
+            }
+            compressed |= leaf.get_short(8) > 0;
+            id = leaf.next();
+        }
+        assertEquals(keys, leafKeys);
+        assertTrue(compressed);
+    }
+
+    @Test
+    public void test_insert_and_bulk_load() {
+        List<String> keys = new ArrayList<>();
+        List<Integer> block_ids = new ArrayList<>();
+        for(int i = 0; i < KEYS; i++) {
+            keys.add(email(i));
+            block_ids.add(i + 1);
+        }
+
+        BPlusTreeIndexFile<String> loaded = new BPlusTreeIndexFile<>(20, String.class);
+        loaded.bulk_load(keys, block_ids, 1.0);
+        checkTree(loaded, keys);
+
+        BPlusTreeIndexFile<String> inserted = new BPlusTreeIndexFile<>(20, String.class);
+        List<Integer> order = new ArrayList<>();
+        for(int i = 0; i < KEYS; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(7));
+        for(int i : order) {
+            inserted.insert(keys.get(i), i + 1);
+        }
+        checkTree(inserted, keys);
+
+        // a range inside one prefix and one across several leaves
+        assertEquals(10, inserted.search_range(email(100), true, email(109), true).size());
+        assertEquals(500, loaded.search_range(email(1000), true, email(1500), false).size());
+    }
+
+    @Test
+    public void test_key_outside_prefix() {
+        BPlusTreeIndexFile<String> tree = new BPlusTreeIndexFile<>(20, String.class);
+        List<String> keys = new ArrayList<>();
+        List<Integer> block_ids = new ArrayList<>();
+        for(int i = 0; i < 10; i++) {
+            keys.add(email(i));
+            block_ids.add(i + 1);
+        }
+        tree.bulk_load(keys, block_ids, 1.0);
+        LeafNode<String> root = (LeafNode<String>) tree.return_blocks().get(tree.return_blocks().get(0).get_short(2));
+        assertTrue(root.get_short(8) > 0);
+
+        // keys sharing less with the leaf shorten its prefix, the stored keys read back whole
+        tree.insert("customer", 20);
+        tree.insert("admin@mail.example.com", 21);
+        tree.insert("customer00003@mail.example.com", 22);
+        assertEquals(0, root.get_short(8));
+        assertNotEquals(-1, tree.search("admin@mail.example.com"));
+        assertNotEquals(-1, tree.search("customer"));
+        assertEquals(-1, tree.search("customer0"));
+
+        List<String> expected = new ArrayList<>(keys);
+        expected.add("customer");
+        expected.add("admin@mail.example.com");
+        expected.add("customer00003@mail.example.com");
+        Collections.sort(expected);
+        assertEquals(expected, new ArrayList<>(tree.return_bfs()));
+
+        // a delete that empties the leaf of the short keys leaves the rest readable
+        assertTrue(tree.delete("admin@mail.example.com"));
+        assertTrue(tree.delete("customer"));
+        for(int i = 0; i < 10; i++) {
+            assertNotEquals(-1, tree.search(email(i)));
+        }
+    }
+}
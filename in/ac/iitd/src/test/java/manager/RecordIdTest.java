@@ -0,0 +1,120 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import index.bplusTree.BPlusTreeIndexFile;
+import manager.StorageManager;
+import storage.File;
+
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.sql.type.SqlTypeName;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RecordIdTest {
+
+    @Test
+    public void test_tree_record_ids() {
+        BPlusTreeIndexFile<Integer> tree = new BPlusTreeIndexFile<>(4, Integer.class);
+        // entries from before the tree keeps slots are left without one
+        for(int k = 0; k < 20; k++) {
+            tree.insert(k, k + 1);
+        }
+        for(int k = 20; k < 40; k++) {
+            tree.insert(k, k + 1, k % 7);
+        }
+        for(int k = 0; k < 40; k++) {
+            List<Long> rids = tree.search_records(k, true, k, true);
+            assertEquals(1, rids.size());
+            assertEquals(k + 1, File.record_block(rids.get(0)));
+            assertEquals(k < 20 ? File.NO_SLOT : k % 7, File.record_slot(rids.get(0)));
+        }
+        assertEquals(40, tree.search_records(null, false, null, false).size());
+
+        // copies of a key in one block are told apart by their slots
+        tree.insert(30, 31, 5);
+        assertFalse(tree.delete(30, 31, 6));
+        assertTrue(tree.update_slot(30, 31, 5, 6));
+        assertTrue(tree.delete(30, 31, 2));
+        List<Long> rids = tree.search_records(30, true, 30, true);
+        assertEquals(1, rids.size());
+        assertEquals(File.record_id(31, 6), (long) rids.get(0));
+        for(int k = 0; k < 40; k++) {
+            assertNotEquals(-1, tree.search(k));
+        }
+    }
+
+    @Test
+    public void test_fetch() {
+        RelDataTypeFactory typeFactory = new JavaTypeFactoryImpl();
+        List<RelDataType> types = new ArrayList<>();
+        // actor_id:int,first_name,last_name,last_update
+        types.add(typeFactory.createSqlType(SqlTypeName.INTEGER));
+        for(int i = 0; i < 3; i++) {
+            types.add(typeFactory.createSqlType(SqlTypeName.VARCHAR));
+        }
+        StorageManager storage_manager = new StorageManager();
+        storage_manager.loadFile("actor.csv", types);
+        assertTrue(storage_manager.create_index("actor", "actor_id", 10));
+        assertTrue(storage_manager.create_index("actor", "last_name", 10, 0.7));
+        int id = storage_manager.get_schema("actor").get_position("actor_id");
+        int last_name = storage_manager.get_schema("actor").get_position("last_name");
+
+        // a record id leads to the record itself
+        int num_records = storage_manager.get_num_records("actor");
+        for(int k = 1; k <= num_records; k++) {
+            List<Long> rids = storage_manager.search_records("actor", "actor_id", k, true, k, true);
+            assertEquals(1, rids.size());
+            Object[] record = storage_manager.fetch("actor", rids.get(0));
+            assertEquals(k, record[id]);
+            assertArrayEquals(new Object[]{k}, storage_manager.fetch("actor", rids.get(0), new int[]{id}));
+        }
+        for(long rid : storage_manager.search_records("actor", "last_name", "Guiness", true, "Guiness", true)) {
+            assertEquals("Guiness", storage_manager.fetch("actor", rid)[last_name]);
+        }
+        assertNull(storage_manager.fetch("actor", File.record_id(1, File.NO_SLOT)));
+
+        // records after the deleted ones move to lower slots, their record ids follow them
+        RexBuilder rexBuilder = new RexBuilder(typeFactory);
+        assertTrue(storage_manager.delete("actor", "last_name", rexBuilder.makeLiteral("Guiness")));
+        assertTrue(storage_manager.search_records("actor", "last_name", "Guiness", true, "Guiness", true).isEmpty());
+        int found = 0;
+        for(int k = 1; k <= num_records; k++) {
+            List<Long> rids = storage_manager.search_records("actor", "actor_id", k, true, k, true);
+            for(long rid : rids) {
+                Object[] record = storage_manager.fetch("actor", rid);
+                assertEquals(k, record[id]);
+                assertNotEquals("Guiness", record[last_name]);
+                // the entry in the other index followed the record too
+                int copies = 0;
+                for(long other : storage_manager.search_records("actor", "last_name", record[last_name], true, record[last_name], true)) {
+                    if(storage_manager.fetch("actor", other)[id].equals(k)) {
+                        copies++;
+                    }
+                }
+                assertEquals(1, copies);
+                found++;
+            }
+        }
+        assertEquals(storage_manager.get_num_records("actor"), found);
+
+        // a new record gets the last slot of its page
+        Object[] row = storage_manager.fetch("actor", storage_manager.search_records("actor", "actor_id", 5, true, 5, true).get(0));
+        row[id] = 1000;
+        assertNotEquals(-1, storage_manager.insert_record("actor", row));
+        List<Long> rids = storage_manager.search_records("actor", "actor_id", 1000, true, 1000, true);
+        assertEquals(1, rids.size());
+        assertArrayEquals(row, storage_manager.fetch("actor", rids.get(0)));
+
+        // varchars are stored as UTF-8, like the index keys, whatever the platform charset
+        row[id] = 1001;
+        row[last_name] = "\u00dcn\u00efcode";
+        assertNotEquals(-1, storage_manager.insert_record("actor", row));
+        rids = storage_manager.search_records("actor", "last_name", row[last_name], true, row[last_name], true);
+        assertEquals(1, rids.size());
+        assertArrayEquals(row, storage_manager.fetch("actor", rids.get(0)));
+    }
+}
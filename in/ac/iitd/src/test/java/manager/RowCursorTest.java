@@ -0,0 +1,120 @@
+import manager.ColumnBatch;
+import optimizer.convention.PConvention;
+import optimizer.rel.BatchCursor;
+import optimizer.rel.RowCursor;
+import optimizer.rules.PRules;
+
+import org.apache.calcite.sql.SqlNode;
+import org.apache.calcite.tools.RuleSet;
+import org.apache.calcite.tools.RuleSets;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.sql.type.SqlTypeName;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RowCursorTest {
+
+    @Test
+    public void test_streaming_limit() {
+        try{
+            MyCalciteConnection calciteConnection = new MyCalciteConnection();
+            calciteConnection.create_index("actor", "actor_id", 10);
+
+            SqlNode sqlNode = calciteConnection.parseSql("select * from actor\n"
+                                    + "where actor_id >= 100");
+            RelNode relNode = calciteConnection.convertSql(calciteConnection.validateSql(sqlNode));
+            RuleSet rules = RuleSets.ofList(
+                PRules.PCustomRule.INSTANCE
+            );
+            RelNode phyRelNode = calciteConnection.logicalToPhysical(
+                    relNode,
+                    relNode.getTraitSet().plus(PConvention.INSTANCE),
+                    rules
+            );
+
+            RowCursor cursor = calciteConnection.open(phyRelNode);
+            int count = 0;
+            Object[] row;
+            while((row = cursor.next()) != null) {
+                assertEquals(4, row.length);
+                assertTrue((Integer) row[0] >= 100);
+                count++;
+            }
+            cursor.close();
+            assertEquals(101, count);
+
+            List<Object []> first = calciteConnection.evaluate(phyRelNode, 5);
+            assertEquals(5, first.size());
+            for(Object[] r : first) {
+                assertTrue((Integer) r[0] >= 100);
+            }
+
+            calciteConnection.close();
+        }
+        catch(Exception e){
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+    }
+
+    @Test
+    public void test_batches_from_rows() {
+        RelDataTypeFactory typeFactory = new JavaTypeFactoryImpl();
+        RelDataType row_type = typeFactory.builder()
+                .add("id", typeFactory.createSqlType(SqlTypeName.INTEGER))
+                .add("name", typeFactory.createSqlType(SqlTypeName.VARCHAR))
+                .add("total", typeFactory.createSqlType(SqlTypeName.DECIMAL))
+                .build();
+        List<Object[]> rows = new ArrayList<>();
+        for(int k = 0; k < 2 * BatchCursor.BATCH_ROWS + 10; k++) {
+            rows.add(new Object[]{k, k % 5 == 0 ? null : "name" + k, BigDecimal.valueOf(k)});
+        }
+
+        // rows come back in order, split into full batches and a last partial one
+        BatchCursor batches = BatchCursor.of(RowCursor.of(rows), row_type);
+        List<Object[]> read = new ArrayList<>();
+        ColumnBatch batch;
+        while((batch = batches.nextBatch()) != null) {
+            assertTrue(batch.get_size() <= BatchCursor.BATCH_ROWS);
+            read.addAll(batch.to_rows());
+        }
+        assertNull(batches.nextBatch());
+        assertEquals(rows.size(), read.size());
+        for(int k = 0; k < rows.size(); k++) {
+            assertArrayEquals(rows.get(k), read.get(k));
+        }
+
+        assertNull(BatchCursor.of(RowCursor.of(new ArrayList<>()), row_type).nextBatch());
+
+        // a consumer that stops after the first row closes the cursor below the batches
+        boolean[] closed = new boolean[1];
+        RowCursor source = RowCursor.of(rows);
+        RowCursor tracked = new RowCursor() {
+            @Override
+            public Object[] next() {
+                return source.next();
+            }
+
+            @Override
+            public void close() {
+                closed[0] = true;
+                source.close();
+            }
+        };
+        RowCursor cursor = RowCursor.of(BatchCursor.of(tracked, row_type));
+        assertArrayEquals(rows.get(0), cursor.next());
+        assertFalse(closed[0]);
+        cursor.close();
+        assertTrue(closed[0]);
+        assertNull(cursor.next());
+    }
+}
@@ -0,0 +1,96 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import index.bplusTree.BPlusTreeIndexFile;
+import index.bplusTree.BlockNode;
+import index.bplusTree.InternalNode;
+import index.bplusTree.StringBPlusTreeIndexFile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class SeparatorTruncationTest {
+
+    private static final int KEYS = 3000;
+
+    private List<String> randomKeys() {
+        Random random = new Random(3);
+        List<String> keys = new ArrayList<>();
+        for(int i = 0; i < KEYS; i++) {
+            StringBuilder key = new StringBuilder("user.");
+            for(int j = 0; j < 30; j++) {
+                key.append((char) ('a' + random.nextInt(26)));
+            }
+            keys.add(key.toString());
+        }
+        return keys;
+    }
+
+    // every separator is shorter than the keys, and lookups and scans see the same keys as a plain tree
+    private void checkTree(BPlusTreeIndexFile<String> tree, BPlusTreeIndexFile<String> plain, List<String> keys) {
+        int separators = 0;
+        for(BlockNode node : tree.return_blocks()) {
+            if(node instanceof InternalNode) {
+                for(Object key : ((InternalNode) node).getKeys()) {
+                    assertTrue(((String) key).length() < 35);
+                    separators++;
+                }
+            }
+        }
+        assertTrue(separators > 0);
+        for(String key : keys) {
+            assertNotEquals(-1, tree.search(key));
+            assertEquals(-1, tree.search(key + "a"));
+        }
+        assertEquals(plain.search_range(null, false, null, false), tree.search_range(null, false, null, false));
+        List<String> sorted = new ArrayList<>(keys);
+        Collections.sort(sorted);
+        String low = sorted.get(100);
+        String high = sorted.get(200);
+        assertEquals(plain.search_range(low, true, high, false), tree.search_range(low, true, high, false));
+        assertEquals(100, tree.search_range(low, true, high, false).size());
+    }
+
+    @Test
+    public void test_insert_and_bulk_load() {
+        List<String> keys = randomKeys();
+        List<Integer> block_ids = new ArrayList<>();
+        BPlusTreeIndexFile<String> inserted = new StringBPlusTreeIndexFile(10);
+        BPlusTreeIndexFile<String> plain = new BPlusTreeIndexFile<>(10, String.class);
+        for(int i = 0; i < KEYS; i++) {
+            block_ids.add(i + 1);
+            inserted.insert(keys.get(i), i + 1);
+            plain.insert(keys.get(i), i + 1);
+        }
+        checkTree(inserted, plain, keys);
+
+        BPlusTreeIndexFile<String> loaded = new StringBPlusTreeIndexFile(10);
+        loaded.bulk_load(keys, block_ids, 0.7);
+        checkTree(loaded, plain, keys);
+
+        // deletes borrow and merge with the short separators in place
+        for(int i = 0; i < KEYS; i += 2) {
+            assertTrue(inserted.delete(keys.get(i)));
+        }
+        for(int i = 0; i < KEYS; i++) {
+            assertEquals(i % 2 == 0, inserted.search(keys.get(i)) == -1);
+        }
+    }
+
+    @Test
+    public void test_duplicates_keep_full_separators() {
+        // copies of a key on both sides of a split leave nothing to cut
+        BPlusTreeIndexFile<String> tree = new StringBPlusTreeIndexFile(4);
+        for(int i = 0; i < 500; i++) {
+            tree.insert("key" + (i % 5) + "-with-a-long-tail", i + 1);
+        }
+        for(int k = 0; k < 5; k++) {
+            String key = "key" + k + "-with-a-long-tail";
+            assertNotEquals(-1, tree.search(key));
+            assertEquals(100, tree.search_range(key, true, key, true).size());
+        }
+        assertEquals(-1, tree.search("key2"));
+    }
+}
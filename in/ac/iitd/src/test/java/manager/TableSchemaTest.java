@@ -0,0 +1,133 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import manager.ColumnBatch;
+import manager.StorageManager;
+import manager.TableSchema;
+
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.sql.type.SqlTypeName;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TableSchemaTest {
+
+    private List<RelDataType> types(SqlTypeName... names) {
+        RelDataTypeFactory typeFactory = new JavaTypeFactoryImpl();
+        List<RelDataType> types = new ArrayList<>();
+        for(SqlTypeName name : names) {
+            types.add(typeFactory.createSqlType(name));
+        }
+        return types;
+    }
+
+    @Test
+    public void test_mixed_column_order() {
+        // customer_id:int,store_id:int,first_name,last_name,email,address_id:int,activebool,create_date,last_update,active:int
+        StorageManager storage_manager = new StorageManager();
+        storage_manager.loadFile("customer.csv", types(SqlTypeName.INTEGER, SqlTypeName.INTEGER, SqlTypeName.VARCHAR,
+                SqlTypeName.VARCHAR, SqlTypeName.VARCHAR, SqlTypeName.INTEGER, SqlTypeName.VARCHAR, SqlTypeName.VARCHAR,
+                SqlTypeName.VARCHAR, SqlTypeName.INTEGER));
+
+        TableSchema schema = storage_manager.get_schema("customer");
+        assertEquals(10, schema.get_num_columns());
+        assertEquals(4, schema.get_num_fixed());
+        assertEquals(2, schema.get_position("address_id"));
+        assertEquals(4, schema.get_position("first_name"));
+        assertEquals(16, schema.get_fixed_length());
+
+        Object[] first = storage_manager.get_records_from_block("customer", 1).get(0);
+        assertArrayEquals(new Object[]{524, 1, 530, 1, "Jared", "Ely", "jared.ely@sakilacustomer.org",
+                "t", "2006-02-14", "2013-05-26 14:49:45.738"}, first);
+    }
+
+    @Test
+    public void test_null_fields() {
+        // address_id:int,address,address2,district,city_id:int,postal_code:int,phone,last_update
+        StorageManager storage_manager = new StorageManager();
+        storage_manager.loadFile("address.csv", types(SqlTypeName.INTEGER, SqlTypeName.VARCHAR, SqlTypeName.VARCHAR,
+                SqlTypeName.VARCHAR, SqlTypeName.INTEGER, SqlTypeName.INTEGER, SqlTypeName.VARCHAR, SqlTypeName.VARCHAR));
+
+        TableSchema schema = storage_manager.get_schema("address");
+        int address_id = schema.get_position("address_id");
+        int postal_code = schema.get_position("postal_code");
+        int address2 = schema.get_position("address2");
+        int phone = schema.get_position("phone");
+        int nulls = 0;
+        int block_id = 1;
+        List<Object[]> records;
+        while((records = storage_manager.get_records_from_block("address", block_id)) != null) {
+            for(Object[] record : records) {
+                assertTrue(record[address_id] instanceof Integer);
+                // empty varchars are not null
+                assertTrue(record[address2] instanceof String);
+                assertTrue(record[phone] instanceof String);
+                if(record[postal_code] == null) {
+                    nulls++;
+                }
+            }
+            block_id++;
+        }
+        assertEquals(4, nulls);
+    }
+
+    @Test
+    public void test_projected_decode() {
+        StorageManager storage_manager = new StorageManager();
+        storage_manager.loadFile("customer.csv", types(SqlTypeName.INTEGER, SqlTypeName.INTEGER, SqlTypeName.VARCHAR,
+                SqlTypeName.VARCHAR, SqlTypeName.VARCHAR, SqlTypeName.INTEGER, SqlTypeName.VARCHAR, SqlTypeName.VARCHAR,
+                SqlTypeName.VARCHAR, SqlTypeName.INTEGER));
+        TableSchema schema = storage_manager.get_schema("customer");
+        int store_id = schema.get_position("store_id");
+        int[] columns = {schema.get_position("email"), schema.get_position("customer_id")};
+
+        int block_id = 1;
+        List<Object[]> records;
+        while((records = storage_manager.get_records_from_block("customer", block_id)) != null) {
+            List<Object[]> projected = storage_manager.get_records_from_block("customer", block_id, store_id,
+                    value -> (Integer) value == 2, columns);
+            int i = 0;
+            for(Object[] record : records) {
+                if((Integer) record[store_id] == 2) {
+                    assertArrayEquals(new Object[]{record[columns[0]], record[columns[1]]}, projected.get(i++));
+                }
+            }
+            assertEquals(i, projected.size());
+            block_id++;
+        }
+    }
+
+    @Test
+    public void test_column_batch() {
+        StorageManager storage_manager = new StorageManager();
+        storage_manager.loadFile("customer.csv", types(SqlTypeName.INTEGER, SqlTypeName.INTEGER, SqlTypeName.VARCHAR,
+                SqlTypeName.VARCHAR, SqlTypeName.VARCHAR, SqlTypeName.INTEGER, SqlTypeName.VARCHAR, SqlTypeName.VARCHAR,
+                SqlTypeName.VARCHAR, SqlTypeName.INTEGER));
+        TableSchema schema = storage_manager.get_schema("customer");
+        int store_id = schema.get_position("store_id");
+        int[] columns = {store_id, schema.get_position("email"), schema.get_position("customer_id")};
+
+        ColumnBatch batch = null;
+        int block_id = 1;
+        List<Object[]> records;
+        while((records = storage_manager.get_records_from_block("customer", block_id)) != null) {
+            // the batch of the previous block is refilled in place
+            batch = storage_manager.get_column_batch("customer", block_id, columns, batch);
+            assertEquals(records.size(), batch.get_size());
+            batch.select(0, "=", 2);
+            List<Object[]> rows = batch.project(new int[]{1, 2}).to_rows();
+            int i = 0;
+            for(Object[] record : records) {
+                if((Integer) record[store_id] == 2) {
+                    assertArrayEquals(new Object[]{record[columns[1]], record[columns[2]]}, rows.get(i++));
+                }
+            }
+            assertEquals(i, batch.get_num_selected());
+            block_id++;
+        }
+        assertNull(storage_manager.get_column_batch("customer", block_id, columns, batch));
+    }
+}
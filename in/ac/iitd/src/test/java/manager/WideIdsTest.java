@@ -0,0 +1,86 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import index.bplusTree.BPlusTreeIndexFile;
+import index.bplusTree.BlockNode;
+import index.bplusTree.IntBPlusTreeIndexFile;
+import index.bplusTree.LeafNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class WideIdsTest {
+
+    private static final int KEYS = 3000;
+
+    private int format(BPlusTreeIndexFile<?> tree) {
+        return tree.return_blocks().get(0).get_short(4);
+    }
+
+    // the block ids of all entries, in leaf order
+    private List<Integer> leafBlockIds(BPlusTreeIndexFile<Integer> tree, int first) {
+        List<Integer> block_ids = new ArrayList<>();
+        for(int id = tree.search(first); id != 0; ) {
+            LeafNode<Integer> leaf = (LeafNode<Integer>) tree.return_blocks().get(id);
+            for(int block_id : leaf.getBlockIds()) {
+                block_ids.add(block_id);
+            }
+            id = leaf.next();
+        }
+        return block_ids;
+    }
+
+    @Test
+    public void test_insert_widens_ids() {
+        BPlusTreeIndexFile<Integer> tree = new BPlusTreeIndexFile<>(5, Integer.class);
+        // small block ids keep the original layout
+        for(int k = 0; k < KEYS; k += 2) {
+            tree.insert(k, k + 1);
+        }
+        assertEquals(0, format(tree));
+
+        // the first block id above 65535 switches every node to 4 byte ids
+        for(int k = 1; k < KEYS; k += 2) {
+            tree.insert(k, 100000 + k);
+        }
+        assertEquals(1, format(tree));
+
+        BlockNode meta = tree.return_blocks().get(0);
+        assertEquals(meta.get_int(6), meta.get_short(2));
+        List<Integer> block_ids = leafBlockIds(tree, 0);
+        assertEquals(KEYS, block_ids.size());
+        for(int k = 0; k < KEYS; k++) {
+            assertEquals(k % 2 == 0 ? k + 1 : 100000 + k, (int) block_ids.get(k));
+            assertNotEquals(-1, tree.search(k));
+        }
+        assertEquals(100, tree.search_range(1000, true, 1100, false).size());
+
+        // entries written before and after the switch can be removed
+        for(int k = 0; k < KEYS; k += 3) {
+            assertTrue(tree.delete(k, k % 2 == 0 ? k + 1 : 100000 + k));
+        }
+        for(int k = 0; k < KEYS; k++) {
+            assertEquals(k % 3 == 0, tree.search(k) == -1);
+        }
+    }
+
+    @Test
+    public void test_bulk_load_wide_ids() {
+        List<Integer> keys = new ArrayList<>();
+        List<Integer> block_ids = new ArrayList<>();
+        for(int k = KEYS - 1; k >= 0; k--) {
+            keys.add(k);
+            block_ids.add(70000 + k);
+        }
+        IntBPlusTreeIndexFile tree = new IntBPlusTreeIndexFile(10);
+        tree.bulk_load(keys, block_ids, 0.8);
+        assertEquals(1, format(tree));
+        List<Integer> loaded = leafBlockIds(tree, 0);
+        for(int k = 0; k < KEYS; k++) {
+            assertEquals(70000 + k, (int) loaded.get(k));
+            assertNotEquals(-1, tree.search(k));
+        }
+        tree.insert(KEYS, 1);
+        assertEquals(1, (int) tree.search_range(KEYS, true, KEYS, true).get(0));
+    }
+}